@@ -1,21 +1,13 @@
 package algorithms;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Stack;
-
-import utils.Reset;
 
 import gnu.trove.map.TObjectFloatMap;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.THashMap;
 import gnu.trove.map.hash.TObjectFloatHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
-import gnu.trove.procedure.TObjectProcedure;
+import gnu.trove.set.hash.THashSet;
+import graph.Edge;
 import graph.Graph;
 import graph.Vertex;
 
@@ -23,6 +15,9 @@ import graph.Vertex;
  * @author Kirsty Williams
  */
 public class BetweennessCentrality {
+	private final TObjectFloatMap<Vertex> betweennessMap;
+	private final TObjectFloatMap<Edge> edgeBetweennessMap;
+
 	/**
 	 * Using the algorithm described by Ulrik Brandes from the University of
 	 * Konstanz in Germany the method calculates the Betweenness Centrality
@@ -35,218 +30,125 @@ public class BetweennessCentrality {
 	 * <li>Sum all pair-dependencies</li>
 	 * </ol>
 	 * <p>
-	 * 
+	 * The graph is copied into index arrays and each source is passed to
+	 * Brandes, which GirvanNewman uses as well. Paths are measured by
+	 * edge weight if the graph is weighted, and in hops if not.
+	 *
 	 * @param Graph
 	 *            - Graph object containing vertices to be analysed.
 	 */
-	private class BCAlgo implements TObjectProcedure<Vertex> {
-		private final Reset resetZero = new Reset(0f, 0);
-		private final Reset resetOne = new Reset(-1f, -1);
-		private final Stack<Vertex> stackS = new Stack<Vertex>();
-		
-		private final EachNeighbour eachNeighbour;
-		
-		private final TObjectFloatMap<Vertex> pairDependencies;
-		private final Queue<Vertex> queue;
-		private final TObjectIntMap<Vertex> numShortestPaths;
-		private final THashMap<Vertex, List<Vertex>> predecessors;
-		private final TObjectFloatMap<Vertex> distance;
-
-		public BCAlgo(final Graph G) {
-			distance = new TObjectFloatHashMap<Vertex>(G.getNumVertices());
-			predecessors = new THashMap<Vertex, List<Vertex>>(G.getNumVertices());
-			numShortestPaths = new TObjectIntHashMap<Vertex>(G.getNumVertices());
-			pairDependencies = new TObjectFloatHashMap<Vertex>(G.getNumVertices());
-
-			if (G.isWeighted())
-				queue = new PriorityQueue<Vertex>(G.getNumVertices(),
-						new CompareDistance(distance));
-			else
-				queue = new ArrayDeque<Vertex>(G.getNumVertices());
-
-			eachNeighbour = new EachNeighbour(distance, predecessors,
-					numShortestPaths, queue);
-
-			G.forEachVertex(new TObjectProcedure<Vertex>() {
-				@Override
-				public boolean execute(final Vertex v) {
-					numShortestPaths.put(v, 0);
-					distance.put(v, -1f);
-					pairDependencies.put(v, 0f);
-					betweennessMap.put(v, 0f);
-					predecessors.put(v, new ArrayList<Vertex>());
-
-					return true;
-				}
-			});
-		}
-
-		/**
-		 * Calculates the pairwise dependencies of each vertex in the
-		 * predecessors list for the passed Vertex object.
-		 * <p>
-		 * 
-		 * @param vertex
-		 *            - Vertex object to be analysed
-		 */
-		private final void calculateDependencies(final Vertex v) {
-			for (final Vertex u : predecessors.get(v)) {
-				pairDependencies.adjustValue(
-						u,
-						(numShortestPaths.get(u) / numShortestPaths.get(v))
-								* (u.getEdge(v).getWeight() + pairDependencies
-										.get(v)));
+	public BetweennessCentrality(final Graph G) {
+		final int n = G.getVertices().size();
+		final Vertex[] vertices = new Vertex[n];
+		final TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(n, 0.5f, -1);
+		int i = 0;
+		for (final Vertex v : G.getVertices()) {
+			vertices[i] = v;
+			index.put(v, i++);
+		}//end for
+
+		// one id per Edge object, those of the graph first
+		final TObjectIntHashMap<Edge> ids = new TObjectIntHashMap<Edge>(G.getEdges().size(), 0.5f, -1);
+		final List<Edge> edgeList = new ArrayList<Edge>(G.getEdges().size());
+		for (final Edge e : G.getEdges())
+			id(e, ids, edgeList);
+
+		// one slot per neighbour in the vertex set: count, then fill
+		final int[] offsets = new int[n + 1];
+		for (i = 0; i < n; i++) {
+			int degree = 0;
+			for (final Vertex u : vertices[i].getNeighbours()) {
+				if (index.get(u) >= 0)
+					degree++;
+			}//end for
+			offsets[i + 1] = offsets[i] + degree;
+		}//end for
+
+		final int[] targets = new int[offsets[n]];
+		final int[] edges = new int[offsets[n]];
+		final float[] weights = G.isWeighted() ? new float[offsets[n]] : null;
+		for (i = 0; i < n; i++) {
+			int k = offsets[i];
+			for (final Vertex u : vertices[i].getNeighbours()) {
+				if (index.get(u) < 0)
+					continue;
+				final Edge edge = vertices[i].getEdge(u);
+				targets[k] = index.get(u);
+				edges[k] = id(edge, ids, edgeList);
+				if (weights != null)
+					weights[k] = edge.getWeight();
+				k++;
 			}//end for
-		}
+		}//end for
+
+		final double[] vertexScore = new double[n];
+		final double[] edgeScore = new double[edgeList.size()];
+		final Brandes brandes = new Brandes(offsets, targets, edges, weights);
+		for (int s = 0; s < n; s++)
+			brandes.run(s, null, vertexScore, edgeScore);
 
-		public final boolean execute(final Vertex v) {
-			// Resets maps for new s
-			predecessors.forEachValue(resetZero);
-			numShortestPaths.transformValues(resetZero);
-			distance.transformValues(resetOne);
-			pairDependencies.transformValues(resetZero);
+		betweennessMap = new TObjectFloatHashMap<Vertex>(n);
+		for (i = 0; i < n; i++)
+			betweennessMap.put(vertices[i], (float) vertexScore[i]);
+		edgeBetweennessMap = new TObjectFloatHashMap<Edge>(edgeList.size());
+		for (int e = 0; e < edgeList.size(); e++)
+			edgeBetweennessMap.put(edgeList.get(e), (float) edgeScore[e]);
 
-			// Init
-			numShortestPaths.put(v, 1);
-			distance.put(v, 0f);
+		if (!G.isDirected()) {
+			for (final Vertex v : vertices)
+				betweennessMap.put(v, betweennessMap.get(v) / 2);
 
 			/*
-			 * Finds shortest paths and list of predecessors for all vertices in
-			 * the graph relative to vertex s.
+			 * Each path is found from both ends, once through each direction
+			 * of its edges, so the two directions of an edge are merged and
+			 * halved.
 			 */
-			processQueue(v);
-
-			// S returns vertices in order of non-increasing distance from s
-			Vertex u;
-			while (!stackS.empty()) {
-				u = stackS.pop();
-
-				calculateDependencies(u);
-
-				// Update rankMap with new value for w.
-				if (v != u)
-					betweennessMap.adjustValue(u, pairDependencies.get(u));
-			}
-
-			return true;
-		}
-
-		/**
-		 * Resets the queue for analysis of the new Vertex object passed then
-		 * finds shortest paths and predecessors.
-		 * <p>
-		 * The method runs while to queue still contains Vertex objects. Each
-		 * vertex gets removed from the queue and pushed to the stack. Then for
-		 * each neighbour of the vertex if the neighbour is found for the first
-		 * time then its distance is set. If it has been found before then the
-		 * number of shortest paths is checked and updated.
-		 * <p>
-		 * 
-		 * @param vertex
-		 *            - Vertex object in the graph to be analysed
-		 */
-		private final void processQueue(final Vertex vSource) {
-			queue.add(vSource);
-
-			Vertex v;
-			while (!queue.isEmpty()) {
-				// deque v from queueQ
-				v = queue.poll();
-
-				// push v onto stackS
-				stackS.push(v);
-
-				// for each neighbour vertex u of v
-				eachNeighbour.v = v;
-				v.eachNeighbour(eachNeighbour);
-			}
-		}
-	}
-	private class CompareDistance implements Comparator<Vertex> {
-		private final TObjectFloatMap<Vertex> distance;
-
-		public CompareDistance(final TObjectFloatMap<Vertex> distance) {
-			this.distance = distance;
-		}
-
-		/**
-		 * Compares two vertices to determine witch has the lowest distance
-		 * value.
-		 * <p>
-		 * 
-		 * @return Int object.
-		 */
-		public final int compare(final Vertex v, final Vertex u) {
-			final float p = distance.get(v);
-			final float q = distance.get(u);
-
-			if (p < q)
-				return 1;
-			else if (p > q)
-				return -1;
-			return 0;
-		}
-	}
-
-	private final class EachNeighbour implements TObjectProcedure<Vertex> {
-		public Vertex v;
-		private final THashMap<Vertex, List<Vertex>> predecessors;
-		private final TObjectIntMap<Vertex> numShortestPaths;
-		private final TObjectFloatMap<Vertex> distance;
-
-		private final Queue<Vertex> queue;
-
-		public EachNeighbour(TObjectFloatMap<Vertex> distance,
-				THashMap<Vertex, List<Vertex>> predecessors,
-				TObjectIntMap<Vertex> numShortestPaths, Queue<Vertex> queue) {
-			this.distance = distance;
-			this.predecessors = predecessors;
-			this.numShortestPaths = numShortestPaths;
-			this.queue = queue;
-		}
-
-		@Override
-		public final boolean execute(final Vertex u) {
-			// check to see if undirected edge exists;
-			final float uvDist = distance.get(v) + v.getEdge(u).getWeight();
-			float uDist = distance.get(u);
-
-			// is u found for the first time?
-			if (uDist < 0) {
-				queue.add(u);
-				distance.put(u, uvDist);
-				uDist = uvDist;
-			}//end if
-
-			// is the shortest path to u via v?
-			if (uDist == uvDist) {
-				numShortestPaths.adjustValue(u, numShortestPaths.get(v));
-				predecessors.get(u).add(v);
-			}//end if
-
-			return true;
-		}
+			final THashSet<Edge> merged = new THashSet<Edge>(edgeBetweennessMap.size());
+			for (final Edge e : edgeList) {
+				if (!merged.add(e))
+					continue;
+
+				final Edge reverse = e.getReverseEdge();
+				float total = edgeBetweennessMap.get(e);
+				if (reverse != null && reverse != e && edgeBetweennessMap.containsKey(reverse)) {
+					total += edgeBetweennessMap.get(reverse);
+					merged.add(reverse);
+					edgeBetweennessMap.put(reverse, total / 2);
+				}//end if
+				edgeBetweennessMap.put(e, total / 2);
+			}//end for
+		}//end if
 	}
 
-	private final TObjectFloatMap<Vertex> betweennessMap;
-
-	public BetweennessCentrality(final Graph G) {
-		betweennessMap = new TObjectFloatHashMap<Vertex>(G.getNumVertices());
-
-		G.forEachVertex(new BCAlgo(G));
-
-		if (!G.isDirected()) {
-			for (final Vertex v : G.getVertices())
-				betweennessMap.put(v, betweennessMap.get(v) / 2);
+	/* The id of e, giving it the next one if it has none */
+	private static int id(final Edge e, final TObjectIntHashMap<Edge> ids, final List<Edge> edgeList) {
+		int id = ids.get(e);
+		if (id < 0) {
+			id = edgeList.size();
+			ids.put(e, id);
+			edgeList.add(e);
 		}//end if
+		return id;
 	}
 
 	/**
 	 * Get Betweenness Centrality scores for all vertices in the graph.
-	 * 
+	 *
 	 * @return betweennessMap - TObjectFloatMap<Vertex>
 	 */
 	public final TObjectFloatMap<Vertex> getBetweennessMap() {
 		return betweennessMap;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Get edge betweenness scores for all edges in the graph: the
+	 * number of shortest paths through each edge, shared between the
+	 * shortest paths of a pair as for the vertices. In an undirected
+	 * graph both directions of an edge get the same score.
+	 *
+	 * @return edgeBetweennessMap - TObjectFloatMap<Edge>
+	 */
+	public final TObjectFloatMap<Edge> getEdgeBetweennessMap() {
+		return edgeBetweennessMap;
+	}
+}
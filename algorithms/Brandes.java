@@ -0,0 +1,210 @@
+package algorithms;
+
+import java.util.Arrays;
+
+/**
+ * The single source pass of Brandes' algorithm (2001) on a graph held
+ * in index arrays, shared by BetweennessCentrality and GirvanNewman.
+ * From a source s it counts the shortest paths to every vertex, by
+ * breadth first search or, with weights, Dijkstra's algorithm, then
+ * works back from the furthest vertex adding up the dependency of s on
+ * each vertex and each edge.
+ * <p>
+ * The graph is a list of slots per vertex, each leading to a target
+ * along an edge id; the two slots of an undirected edge may share an
+ * id. A slot whose edge is marked removed is not followed, so edges can
+ * be taken out between passes without building the arrays again.
+ * <p>
+ * Only the vertices a pass reaches are touched, and reset again at the
+ * end of it, so a pass costs time in the size of the source's component
+ * rather than in n. Weights must be positive.
+ *
+ * @author Kirsty Williams
+ */
+final class Brandes {
+	private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+	private final int[] offsets; // the slots of v are offsets[v] .. offsets[v+1]-1
+	private final int[] targets; // the vertex each slot leads to
+	private final int[] edges; // the edge id of each slot
+	private final float[] weights; // the weight of each slot, or null to count hops
+	private final int[] sources; // the vertex each slot leads from
+
+	// scratch space, reset after each pass
+	private final float[] distance;
+	private final double[] paths;
+	private final double[] dependency;
+	private final int[] order; // vertices in the order they are settled
+	private final int[] predecessor; // first slot on a shortest path into each vertex, -1 if none
+	private final int[] nextPredecessor; // the slot after each slot in its vertex's list
+	private final int[] heap;
+	private final int[] position; // of each vertex in the heap, -1 if not in it
+
+	Brandes(final int[] offsets, final int[] targets, final int[] edges, final float[] weights) {
+		final int n = offsets.length - 1;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.edges = edges;
+		this.weights = weights;
+
+		sources = new int[targets.length];
+		for (int v = 0; v < n; v++)
+			Arrays.fill(sources, offsets[v], offsets[v + 1], v);
+
+		distance = new float[n];
+		paths = new double[n];
+		dependency = new double[n];
+		order = new int[n];
+		predecessor = new int[n];
+		nextPredecessor = new int[targets.length];
+		Arrays.fill(distance, UNREACHABLE);
+		Arrays.fill(predecessor, -1);
+		if (weights == null) {
+			heap = null;
+			position = null;
+		} else {
+			heap = new int[n];
+			position = new int[n];
+			Arrays.fill(position, -1);
+		}//end if
+	}
+
+	/**
+	 * Adds the dependency of s on every other vertex to vertexScore, and
+	 * on every edge to edgeScore by edge id; either may be null.
+	 *
+	 * @param removed - edges not to follow, by edge id, or null
+	 */
+	void run(final int s, final boolean[] removed, final double[] vertexScore, final double[] edgeScore) {
+		distance[s] = 0;
+		paths[s] = 1;
+		final int reached = weights == null ? breadthFirst(s, removed) : dijkstra(s, removed);
+
+		// vertices in order of non-increasing distance from s
+		for (int i = reached - 1; i >= 0; i--) {
+			final int v = order[i];
+			for (int k = predecessor[v]; k >= 0; k = nextPredecessor[k]) {
+				final int u = sources[k];
+				final double d = paths[u] / paths[v] * (1 + dependency[v]);
+				dependency[u] += d;
+				if (edgeScore != null)
+					edgeScore[edges[k]] += d;
+			}//end for
+			if (vertexScore != null && v != s)
+				vertexScore[v] += dependency[v];
+		}//end for
+
+		for (int i = 0; i < reached; i++) {
+			final int v = order[i];
+			distance[v] = UNREACHABLE;
+			paths[v] = 0;
+			dependency[v] = 0;
+			predecessor[v] = -1;
+		}//end for
+	}
+
+	/* Counts the shortest paths in hops, returning how many vertices were reached */
+	private int breadthFirst(final int s, final boolean[] removed) {
+		int head = 0, tail = 0;
+		order[tail++] = s;
+		while (head < tail) {
+			final int v = order[head++];
+			final float d = distance[v] + 1;
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				if (removed != null && removed[edges[k]])
+					continue;
+				final int u = targets[k];
+				if (distance[u] == UNREACHABLE) {
+					distance[u] = d;
+					order[tail++] = u;
+				}//end if
+				if (distance[u] == d) {
+					paths[u] += paths[v];
+					nextPredecessor[k] = predecessor[u];
+					predecessor[u] = k;
+				}//end if
+			}//end for
+		}//end while
+		return tail;
+	}
+
+	/* Counts the shortest weighted paths, returning how many vertices were reached */
+	private int dijkstra(final int s, final boolean[] removed) {
+		int reached = 0;
+		int size = 0;
+		heap[size] = s;
+		position[s] = size++;
+
+		while (size > 0) {
+			final int v = heap[0];
+			position[v] = -1;
+			if (--size > 0)
+				siftDown(heap[size], 0, size);
+			order[reached++] = v;
+
+			final float dv = distance[v];
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				if (removed != null && removed[edges[k]])
+					continue;
+				final int u = targets[k];
+				final float d = dv + weights[k];
+				if (d > distance[u])
+					continue;
+
+				if (d == distance[u]) {
+					paths[u] += paths[v];
+					nextPredecessor[k] = predecessor[u];
+					predecessor[u] = k;
+					continue;
+				}//end if
+
+				// a shorter path, which replaces those found so far
+				distance[u] = d;
+				paths[u] = paths[v];
+				nextPredecessor[k] = -1;
+				predecessor[u] = k;
+				int i = position[u];
+				if (i < 0)
+					i = size++;
+				siftUp(u, i);
+			}//end for
+		}//end while
+		return reached;
+	}
+
+	/* places u at slot i or above it */
+	private void siftUp(final int u, int i) {
+		final float d = distance[u];
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			final int p = heap[parent];
+			if (distance[p] <= d)
+				break;
+			heap[i] = p;
+			position[p] = i;
+			i = parent;
+		}//end while
+		heap[i] = u;
+		position[u] = i;
+	}
+
+	/* places u at slot i or below it, within a heap of the given size */
+	private void siftDown(final int u, int i, final int size) {
+		final float d = distance[u];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && distance[heap[child + 1]] < distance[heap[child]])
+				child++;
+			final int c = heap[child];
+			if (distance[c] >= d)
+				break;
+			heap[i] = c;
+			position[c] = i;
+			i = child;
+		}//end while
+		heap[i] = u;
+		position[u] = i;
+	}
+}
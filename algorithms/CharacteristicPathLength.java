@@ -1,11 +1,6 @@
 package algorithms;
 
-import java.util.Iterator;
-import java.util.Set;
-import gnu.trove.map.hash.THashMap;
-import graph.Edge;
 import graph.Graph;
-import graph.Vertex;
 
 /**
  * The path length of a graph is the number of distinct
@@ -23,122 +18,77 @@ import graph.Vertex;
  */
 public class CharacteristicPathLength {
 	
-	private THashMap<Integer, Vertex> iMap; //Map an integer to every vertex in the graph
-	private THashMap<Vertex, Integer> vMap; //Map a vertex to its integer representation
 	private int n; //The number of vertices
+	private double sum = 0; //The sum of all finite distances
+	private long infinitePaths = 0; //Pairs with no path between them
+	private double cpl;
 	
 	/**
 	 * @param G - the graph
 	 */
 	public CharacteristicPathLength(Graph G){
-		//initialise variables
-		n = G.getVertices().size();
-		iMap = new THashMap<Integer, Vertex>(n);
-		vMap = new THashMap<Vertex, Integer>(n);
+		this(G, false);
+	}//end constructor
 	
-		//store vertex pointer in map
-		int i = 0;
-	  	for (Vertex v : G.getVertices()){
-	  		vMap.put(v, i);
-	  		iMap.put(i, v);
-	  		i++;
-	  	}//end for
+	/**
+	 * @param G - the graph
+	 * @param approximate - estimate the path length with
+	 * HyperANF in a few passes over the edges, instead of
+	 * searching from every vertex, for graphs too large
+	 * for the exact computation
+	 */
+	public CharacteristicPathLength(Graph G, boolean approximate){
+		n = G.getVertices().size();
+		ShortestPaths paths = new ShortestPaths(G.getVertices(), false, false);
 	  	
-	  	//System.out.println("cpl:" + calculateCPL());
-	  	calculateCPL();
+		if(approximate){
+			cpl = new HyperANF(paths, HyperANF.LOG2M, 0).getAveragePathLength();
+			System.out.println("CPL (approximate): " + cpl);
+		}
+		else calculateCPL(paths);
 	}//end constructor
 	
 	/**
 	 * This method calculates the average
 	 * shortest path length between any two vertices
-	 * (i.e. the characteristic path length).
+	 * (i.e. the characteristic path length). Edges are
+	 * followed both ways and count one each, and each
+	 * row of distances is summed and dropped, so no
+	 * n x n matrix is held.
 	 */
-	private void calculateCPL(){
-		double cpl = 0; //The sum of all distances
-		int infinitePaths = 0; //any infinte paths
-		
-		for(int i = 0; i < n; i++){
-			int[] L = new int[n]; //distances from i to every other vertex
-			boolean[] checked = new boolean[n]; //visited vertices
-			
-			for(int j = 0; j < n; j++){
-				L[j] = Integer.MAX_VALUE; //initialise to very large number
-			}//end for
-			
-			//Retrieve neighbours of the vertex i
-			//Set<Vertex> neighbours = iMap.get(i).getNeighbours();
-			Set<Edge> neighbours = iMap.get(i).getEdges();
-			Iterator<Edge> it = neighbours.iterator();
-			
-			//iterate over all neighbours
-			while(it.hasNext()){
-				Edge edge = it.next();
-				Vertex k = edge.getVertexTo();
-				int neighbourIndex = vMap.get(k);
-				
-				//Make sure we have retrieved the correct side of 
-				//the edge
-				if(neighbourIndex == i)
-					neighbourIndex = vMap.get(edge.getVertexFrom());
+	private void calculateCPL(ShortestPaths paths){
+		paths.forEachSource(new ShortestPaths.RowConsumer() {
+			public void row(int i, float[] L) {
+				long rowSum = 0;
+				int rowInfinite = 0;
 				
-				//set distance to the neighbour as 1
-				L[neighbourIndex] = 1;
-			}//end while
-			
-			//Check vertices on path from i to j
-			//if distance from i to k is less than
-			//a valid distance
-			for(int valid = 1; valid < n; valid++){
-				int min = Integer.MAX_VALUE;
-				int index = 0;
-				
-				for(int j=0;j<n;j++){
-					if((min > L[j]) && (!checked[j])){
-						min = L[j];
-						index = j;
+				//add all shortest distances
+				for(int j=0; j<n;j++){
+					if(i != j){
+						if(L[j] != ShortestPaths.UNREACHABLE) rowSum += (long) L[j];
+						else rowInfinite++;
 					}//end if
 				}//end for
 				
-				//mark closest vertex as visited
-				checked[index] = true;
-				
-				//get neighbours of neighbour
-				//Set<Vertex> adjacentNeighbours = iMap.get(index).getNeighbours();
-				Set<Edge> adjacentNeighbours = iMap.get(index).getEdges();
-				Iterator<Edge> it2 = adjacentNeighbours.iterator();
-				
-				//iterate over adjacent neighbours
-				while(it2.hasNext()){
-					Edge edge = it2.next();
-					Vertex k = edge.getVertexTo();
-					int adjacentNeighbourIndex = vMap.get(k);
-					
-					//Make sure we have retrieved the correct side of 
-					//the edge
-					if(adjacentNeighbourIndex == index)
-						adjacentNeighbourIndex = vMap.get(edge.getVertexFrom());
-					
-					if(!checked[adjacentNeighbourIndex]){
-						//increment distance
-						int sum = L[index] + 1;
-						if(sum < L[adjacentNeighbourIndex]){
-							L[adjacentNeighbourIndex] = sum;
-						}//end if
-					}//end if
-				}//end while		
-			}//end for
-			
-			//add all shortest distances
-			for(int j=0; j<n;j++){
-				if(i != j){
-					if((L[j] < Integer.MAX_VALUE) && (L[j] > 0)) cpl += L[j];
-					else infinitePaths++;
-				}//end if
-			}//end for
-		}//end for
+				add(rowSum, rowInfinite);
+			}
+		});
 		
-		//return the characteristic path length
-		System.out.println("CPL: " +  cpl/((double)(n * (n - 1.0d) - infinitePaths)));
+		cpl = sum/((double)(n * (n - 1.0d) - infinitePaths));
+		System.out.println("CPL: " +  cpl);
 
 	}//end calculateCPL()
+	
+	private synchronized void add(long rowSum, int rowInfinite){
+		sum += rowSum;
+		infinitePaths += rowInfinite;
+	}//end add()
+	
+	/**
+	 * @return the characteristic path length, counting only
+	 * pairs that have a path between them
+	 */
+	public double getCharacteristicPathLength(){
+		return cpl;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,175 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import gnu.trove.map.TObjectFloatMap;
+import gnu.trove.map.hash.TObjectFloatHashMap;
+import graph.Graph;
+import graph.Vertex;
+
+/**
+ * Closeness and harmonic centrality of every vertex, from the
+ * distances d(s, v) of the shortest paths to it from the other vertices.
+ * As in CharacteristicPathLength, a distance is the number of edges on
+ * the path, and edges are followed either way and not weighted, so
+ * d(s, v) = d(v, s) and every distance to another vertex is at least 1.
+ * <p>
+ * With r(v) the number of vertices that reach v and m(v) the number of
+ * sources other than v that were searched from:
+ * <ul>
+ * <li>closeness(v) = r(v) / sum_s d(s, v) * r(v) / m(v), which is the
+ * inverse of the mean distance to v, scaled down by the fraction of
+ * vertices that reach it (Wasserman and Faust) so that a vertex in a
+ * small component does not score highly;</li>
+ * <li>harmonic(v) = 1 / m(v) * sum_s 1 / d(s, v), where an unreachable
+ * vertex counts zero.</li>
+ * </ul>
+ * Both lie between 0 and 1. In the exact mode every vertex is a source,
+ * so m(v) = n - 1. In the approximate mode only a random sample of k
+ * sources is searched (Eppstein and Wang), which takes k searches
+ * instead of n and estimates both means from the sample.
+ * <p>
+ * The searches run in parallel on ShortestPaths. Each thread adds its
+ * rows into its own sums, and the sums are added together at the end.
+ *
+ * @author Kirsty Williams
+ */
+public class ClosenessCentrality {
+	/**
+	 * Per column totals over the rows one thread has seen.
+	 */
+	private static final class Sums {
+		final double[] distance;
+		final double[] harmonic;
+		final int[] reached;
+		final int[] sources; // rows seen from sources other than the vertex
+
+		Sums(final int n) {
+			distance = new double[n];
+			harmonic = new double[n];
+			reached = new int[n];
+			sources = new int[n];
+		}
+	}
+
+	private final TObjectFloatMap<Vertex> closenessMap;
+	private final TObjectFloatMap<Vertex> harmonicMap;
+
+	/**
+	 * Exact closeness and harmonic centrality, from every vertex.
+	 */
+	public ClosenessCentrality(final Graph G) {
+		this(G, Integer.MAX_VALUE, new Random());
+	}
+
+	/**
+	 * Approximate closeness and harmonic centrality, from a random sample
+	 * of the vertices; exact if samples is at least the number of
+	 * vertices.
+	 */
+	public ClosenessCentrality(final Graph G, final int samples) {
+		this(G, samples, new Random());
+	}
+
+	/**
+	 * @param random - picks the sampled sources
+	 */
+	public ClosenessCentrality(final Graph G, final int samples, final Random random) {
+		final ShortestPaths paths = new ShortestPaths(G.getVertices(), false, false);
+		final int n = paths.getNumVertices();
+		closenessMap = new TObjectFloatHashMap<Vertex>(n);
+		harmonicMap = new TObjectFloatHashMap<Vertex>(n);
+
+		final List<Sums> all = new ArrayList<Sums>();
+		final ThreadLocal<Sums> local = new ThreadLocal<Sums>() {
+			@Override
+			protected Sums initialValue() {
+				final Sums sums = new Sums(n);
+				synchronized (all) {
+					all.add(sums);
+				}//end synchronized
+				return sums;
+			}
+		};
+
+		paths.forEachSource(sample(n, samples, random), new ShortestPaths.RowConsumer() {
+			public void row(final int source, final float[] d) {
+				final Sums sums = local.get();
+				for (int v = 0; v < n; v++) {
+					if (v == source)
+						continue;
+					sums.sources[v]++;
+					if (d[v] != ShortestPaths.UNREACHABLE) {
+						sums.distance[v] += d[v];
+						sums.harmonic[v] += 1 / d[v];
+						sums.reached[v]++;
+					}//end if
+				}//end for
+			}
+		});
+
+		final Sums total = new Sums(n);
+		for (Sums sums : all) {
+			for (int v = 0; v < n; v++) {
+				total.distance[v] += sums.distance[v];
+				total.harmonic[v] += sums.harmonic[v];
+				total.reached[v] += sums.reached[v];
+				total.sources[v] += sums.sources[v];
+			}//end for
+		}//end for
+
+		for (int v = 0; v < n; v++) {
+			float closeness = 0, harmonic = 0;
+			if (total.sources[v] > 0) {
+				final double m = total.sources[v];
+				if (total.distance[v] > 0)
+					closeness = (float) (total.reached[v] / total.distance[v] * (total.reached[v] / m));
+				harmonic = (float) (total.harmonic[v] / m);
+			}//end if
+			closenessMap.put(paths.getVertex(v), closeness);
+			harmonicMap.put(paths.getVertex(v), harmonic);
+		}//end for
+	}
+
+	/**
+	 * Picks k of the n vertices at random, or all of them if k >= n.
+	 */
+	private static int[] sample(final int n, final int k, final Random random) {
+		final int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		if (k >= n)
+			return order;
+
+		// partial Fisher-Yates shuffle
+		final int[] sources = new int[Math.max(0, k)];
+		for (int i = 0; i < sources.length; i++) {
+			final int j = i + random.nextInt(n - i);
+			final int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+			sources[i] = order[i];
+		}//end for
+		return sources;
+	}
+
+	/**
+	 * Get closeness centrality scores for all vertices in the graph.
+	 *
+	 * @return closenessMap - TObjectFloatMap<Vertex>
+	 */
+	public final TObjectFloatMap<Vertex> getClosenessMap() {
+		return closenessMap;
+	}
+
+	/**
+	 * Get harmonic centrality scores for all vertices in the graph.
+	 *
+	 * @return harmonicMap - TObjectFloatMap<Vertex>
+	 */
+	public final TObjectFloatMap<Vertex> getHarmonicMap() {
+		return harmonicMap;
+	}
+}
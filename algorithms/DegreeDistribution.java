@@ -77,5 +77,14 @@ public class DegreeDistribution {
 			}//end for
 		}//end if
 	}//end printDegreeDistribution
+	
+	/**
+	 * Returns the number of vertices of each degree, 
+	 * indexed by degree. In the case of directed graphs
+	 * the inDegree is used.
+	 */
+	public int[] getDistribution(){
+		return dd;
+	}//end getDistribution
 }//end class
 
@@ -0,0 +1,217 @@
+package algorithms;
+
+import graph.Graph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Exact diameter of a graph by iFUB (Crescenzi, Grossi, Habib, Lanzi
+ * and Marino, 2013), which on real networks needs a few dozen breadth
+ * first searches rather than one from every vertex.
+ * <p>
+ * Within each connected component:
+ * <ol>
+ * <li>A double sweep from the vertex of highest degree, a search to
+ * the furthest vertex a and another from a to the furthest vertex b,
+ * gives a lower bound ecc(a) and a path from a to b; the search
+ * continues from u, the vertex half way along it, which tends to be
+ * central.</li>
+ * <li>The search from u puts every vertex at level d(u, v). A vertex at
+ * level i or below is at most 2i from any other, so 2 ecc(u) is an
+ * upper bound.</li>
+ * <li>Working down from the deepest level i, the eccentricities of the
+ * vertices on level i are found. If the largest, B, is more than
+ * 2(i - 1), no pair with both ends above level i can beat it, and the
+ * diameter is max(lower bound, B). Otherwise the lower bound rises to
+ * B, the upper bound drops to 2(i - 1), and the next level up is
+ * tried.</li>
+ * </ol>
+ * The diameter of the graph is the largest over its components, and a
+ * component is skipped if it has too few vertices to beat the largest
+ * so far. Direction and weights are ignored, so it is counted in hops,
+ * like CharacteristicPathLength.
+ *
+ * @author Kirsty Williams
+ */
+public class Diameter {
+	private final ShortestPaths paths;
+	// two searches, each with the row it last wrote, so that one row can
+	// be kept while the other is searched; only reached vertices are reset
+	private ShortestPaths.Search search;
+	private float[] distance;
+	private ShortestPaths.Search kept;
+	private float[] keptDistance;
+	private int furthest; // the vertex furthest from the last search
+	private int diameter = 0;
+	private int searches = 0;
+
+	/**
+	 * @param G - the graph
+	 */
+	public Diameter(final Graph G) {
+		paths = new ShortestPaths(G.getVertices(), false, false);
+		final int n = paths.getNumVertices();
+		search = paths.newSearch();
+		kept = paths.newSearch();
+		distance = new float[n];
+		keptDistance = new float[n];
+		Arrays.fill(distance, ShortestPaths.UNREACHABLE);
+		Arrays.fill(keptDistance, ShortestPaths.UNREACHABLE);
+
+		// label the components, then group their vertices, largest first
+		final int[] label = new int[n];
+		Arrays.fill(label, -1);
+		final int[] queue = new int[n];
+		int components = 0;
+		for (int s = 0; s < n; s++) {
+			if (label[s] >= 0)
+				continue;
+			int head = 0, tail = 0;
+			queue[tail++] = s;
+			label[s] = components;
+			while (head < tail) {
+				final int v = queue[head++];
+				for (int k = paths.offsets[v]; k < paths.offsets[v + 1]; k++) {
+					final int u = paths.targets[k];
+					if (label[u] < 0) {
+						label[u] = components;
+						queue[tail++] = u;
+					}//end if
+				}//end for
+			}//end while
+			components++;
+		}//end for
+
+		final int[] start = new int[components + 1];
+		for (int v = 0; v < n; v++)
+			start[label[v] + 1]++;
+		final Integer[] bySize = new Integer[components];
+		for (int c = 0; c < components; c++)
+			bySize[c] = c;
+		Arrays.sort(bySize, new Comparator<Integer>() {
+			public int compare(final Integer a, final Integer b) {
+				return start[b + 1] - start[a + 1];
+			}
+		});
+		final int[] size = new int[components];
+		for (int c = 0; c < components; c++)
+			size[c] = start[c + 1];
+		for (int c = 0; c < components; c++)
+			start[c + 1] += start[c];
+		final int[] members = new int[n];
+		for (int v = 0; v < n; v++)
+			members[start[label[v]]++] = v; // start[c] ends at the start of c + 1
+
+		for (Integer c : bySize) {
+			// a component of k vertices has a diameter of at most k - 1
+			if (size[c] - 1 <= diameter)
+				break;
+			final int from = start[c] - size[c];
+			diameter = Math.max(diameter, component(Arrays.copyOfRange(members, from, from + size[c])));
+		}//end for
+	}
+
+	/**
+	 * iFUB on one component.
+	 */
+	private int component(final int[] members) {
+		final int size = members.length;
+
+		// double sweep from the vertex of highest degree
+		int r = members[0];
+		for (int i = 1; i < size; i++) {
+			if (degree(members[i]) > degree(r))
+				r = members[i];
+		}//end for
+
+		search(r);
+		final int a = furthest;
+		final int ecc = search(a);
+		int lower = ecc;
+		final int b = furthest;
+
+		// u is half way along a shortest path from a to b
+		keep();
+		final float[] fromA = keptDistance;
+		search(b);
+		int u = a;
+		for (int i = 0; i < size; i++) { // the search from b reaches the whole component
+			final int v = search.getReached(i);
+			if (fromA[v] == ecc / 2 && distance[v] == ecc - ecc / 2) {
+				u = v;
+				break;
+			}//end if
+		}//end for
+
+		// bucket the vertices by level from u
+		final int eccU = search(u);
+		lower = Math.max(lower, eccU);
+		final int[] start = new int[eccU + 2];
+		for (int i = 0; i < size; i++)
+			start[(int) distance[members[i]] + 1]++;
+		for (int d = 0; d <= eccU; d++)
+			start[d + 1] += start[d];
+		final int[] level = new int[size];
+		final int[] fill = start.clone();
+		for (int i = 0; i < size; i++)
+			level[fill[(int) distance[members[i]]]++] = members[i];
+
+		int upper = 2 * eccU;
+		for (int i = eccU; i > 0 && upper > lower; i--) {
+			int fringe = 0;
+			for (int k = start[i]; k < start[i + 1]; k++)
+				fringe = Math.max(fringe, search(level[k]));
+
+			if (Math.max(lower, fringe) > 2 * (i - 1))
+				return Math.max(lower, fringe);
+			lower = Math.max(lower, fringe);
+			upper = 2 * (i - 1);
+		}//end for
+		return lower;
+	}
+
+	/**
+	 * Breadth first search from s into distance, in time proportional
+	 * to the size of the component of s. The last vertex the search
+	 * reaches is as far from s as any, so it is the furthest.
+	 *
+	 * @return the eccentricity of s within its component
+	 */
+	private int search(final int s) {
+		searches++;
+		final int reached = search.next(s, distance);
+		furthest = search.getReached(reached - 1);
+		return (int) distance[furthest];
+	}
+
+	/* Keeps the row of the last search while the next one is run */
+	private void keep() {
+		final ShortestPaths.Search swap = kept;
+		kept = search;
+		search = swap;
+		final float[] row = keptDistance;
+		keptDistance = distance;
+		distance = row;
+	}
+
+	private int degree(final int v) {
+		return paths.offsets[v + 1] - paths.offsets[v];
+	}
+
+	/**
+	 * The longest shortest path between any two vertices with a path
+	 * between them, in hops.
+	 */
+	public final int getDiameter() {
+		return diameter;
+	}
+
+	/**
+	 * Breadth first searches it took, besides the one pass that finds
+	 * the components.
+	 */
+	public final int getSearches() {
+		return searches;
+	}
+}
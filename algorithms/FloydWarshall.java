@@ -1,26 +1,71 @@
 package utils;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
 import graph.Vertex;
 
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
+* Blocked Floyd-Warshall. The distances are held tile by tile, each
+* TILE x TILE tile in a flat array of its own, padded to a whole number
+* of tiles; as no array holds more than a tile, no offset can overflow
+* however large the graph. Each round over a
+* band of intermediate vertices runs in three phases: the tile on the
+* diagonal, then the tiles in its row and column, then every other tile.
+* The tiles of a phase do not depend on each other, so each phase runs
+* in parallel on a fork-join pool, and a tile is small enough that the
+* three tiles it reads stay in cache while it is updated. The pool is
+* one shared by every instance unless one is passed in.
+* <p>
+* Unreachable pairs hold INF, half of Integer.MAX_VALUE, so that the sum
+* of two distances never overflows and no cell needs checking.
+*
 * @author Kirsty Williams
 */
 public class FloydWarshall {
-	private int[][] matrix;
+	private static final int TILE = 64; // 3 tiles of ints fit in L2
+	private static final int INF = Integer.MAX_VALUE / 2;
+	// the phases of a round, see Tiles
+	private static final int DIAGONAL = 0;
+	private static final int CROSS = 1;
+	private static final int REST = 2;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private int[][][] matrix; // tile (ti, tj), cell (i, j) of it at i * TILE + j
+	private int tiles; // per row and column of matrix
 	private double avg = 0;
 	public Vertex vLargest;
-	
+
 	public FloydWarshall(Set<Vertex> V) {
-		matrix = new int[V.size()][V.size()];
+		this(V, POOL);
+	}
+
+	public FloydWarshall(Set<Vertex> V, ForkJoinPool pool) {
+		final int n = V.size();
+		tiles = (n + TILE - 1) / TILE;
+		matrix = new int[tiles][tiles][];
+		for (int ti = 0; ti < tiles; ti++) {
+			for (int tj = 0; tj < tiles; tj++) {
+				matrix[ti][tj] = new int[TILE * TILE];
+				Arrays.fill(matrix[ti][tj], INF);
+			}//end for
+		}//end for
+
+		final TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(n, 0.5f, -1);
+		int i = 0;
+		for (Vertex v : V)
+			index.put(v, i++);
+
+		// An edge from v weighs v's cycle length, as before
 		int largestCycle = 0;
 		int currentCycle = 0;
 		int vLargestCycle = 0;
-		int i = 0;
-		int j = 0;
+		i = 0;
 		for (Vertex v : V) {
-			j = 0;
 			currentCycle = (int) v
 					.getProperty("Cycle Length (E)");
 			if (currentCycle > largestCycle) {
@@ -28,42 +73,117 @@ public class FloydWarshall {
 				vLargestCycle = i;
 				vLargest = v;
 			}//end if
-			for (Vertex u : V) {
-				if (v == u)
-					matrix[i][j] = 0;
-				else if (v.isConnected(u)) {
-					matrix[i][j] = currentCycle;
-				} else
-					matrix[i][j] = Integer.MAX_VALUE;
-				j++;
+			for (Vertex u : v.getNeighbours()) {
+				final int j = index.get(u);
+				if (j >= 0)
+					set(i, j, currentCycle);
 			}//end for
+			set(i, i, 0);
 			i++;
 		}//end for
 
-		int vu;
-		int vk;
-		int ku;
-		int newD;
-		for (int h = 0; h < V.size(); h++) {
-			for (i = 0; i < V.size(); i++) {
-				for (j = 0; j < V.size(); j++) {
-					vu = matrix[i][j];
-					vk = matrix[i][h];
-					ku = matrix[h][j];
-
-					if (vk == Integer.MAX_VALUE || ku == Integer.MAX_VALUE)
-						newD = vu;
-					else
-						newD = Math.min(vu, vk + ku);
-					matrix[i][j] = newD;
+		for (int k = 0; k < tiles; k++) {
+			pool.invoke(new Tiles(DIAGONAL, k, 0, 1));
+			pool.invoke(new Tiles(CROSS, k, 0, 2 * (tiles - 1)));
+			pool.invoke(new Tiles(REST, k, 0, (tiles - 1) * (tiles - 1)));
+		}//end for
+
+		avg = 0;
+		for (i = 0; i < n; i++) {
+			final int d = get(i, vLargestCycle);
+			avg += d >= INF ? Integer.MAX_VALUE : d;
+		}//end for
+
+		avg /= n - 1;
+	}
+
+	private final int get(final int i, final int j) {
+		return matrix[i / TILE][j / TILE][i % TILE * TILE + j % TILE];
+	}
+
+	private final void set(final int i, final int j, final int d) {
+		matrix[i / TILE][j / TILE][i % TILE * TILE + j % TILE] = d;
+	}
+
+	/**
+	 * Relaxes tile (ti, tj) through the intermediate vertices of band k.
+	 */
+	private final void relax(final int ti, final int tj, final int k) {
+		final int[] d = matrix[ti][tj];
+		final int[] through = matrix[ti][k]; // from i to h
+		final int[] onward = matrix[k][tj]; // from h to j
+
+		for (int h = 0; h < TILE; h++) {
+			final int rowH = h * TILE;
+			for (int i = 0; i < TILE; i++) {
+				final int rowI = i * TILE;
+				final int ih = through[rowI + h];
+				if (ih >= INF)
+					continue;
+
+				for (int j = 0; j < TILE; j++) {
+					final int newD = ih + onward[rowH + j];
+					if (newD < d[rowI + j])
+						d[rowI + j] = newD;
 				}//end for
 			}//end for
 		}//end for
-		avg = 0;
-		for (int[] tmp : matrix)
-			avg += tmp[vLargestCycle];
-		
-		avg /= V.size() - 1;
+	}
+
+	/**
+	 * The tiles from..to-1 of one phase of round k, split in halves until
+	 * each task is a tile. A tile's coordinates are worked out from its
+	 * number in the phase, so no list of tiles is built per round: the
+	 * DIAGONAL phase is tile (k, k), CROSS numbers (k, a) and (a, k) in
+	 * pairs, and REST numbers (a, b) row by row, with a and b skipping k.
+	 */
+	private final class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int phase;
+		private final int k;
+		private final int from;
+		private final int to;
+
+		Tiles(final int phase, final int k, final int from, final int to) {
+			this.phase = phase;
+			this.k = k;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from)
+					relax(from);
+				return;
+			}//end if
+
+			final int mid = (from + to) >>> 1;
+			invokeAll(new Tiles(phase, k, from, mid), new Tiles(phase, k, mid, to));
+		}
+
+		private void relax(final int t) {
+			switch (phase) {
+			case DIAGONAL:
+				FloydWarshall.this.relax(k, k, k);
+				break;
+			case CROSS:
+				final int a = skip(t >>> 1);
+				if ((t & 1) == 0)
+					FloydWarshall.this.relax(k, a, k);
+				else
+					FloydWarshall.this.relax(a, k, k);
+				break;
+			default:
+				final int others = tiles - 1;
+				FloydWarshall.this.relax(skip(t / others), skip(t % others), k);
+			}//end switch
+		}
+
+		/* the a-th tile index other than k */
+		private int skip(final int a) {
+			return a < k ? a : a + 1;
+		}
 	}
 
 	public double getAvg() {
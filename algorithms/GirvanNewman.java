@@ -0,0 +1,425 @@
+package algorithms;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import graph.Graph;
+import graph.Vertex;
+
+import java.util.Arrays;
+
+/**
+ * Community detection by Girvan and Newman (2002): the edge with the
+ * highest betweenness is removed, over and over, and the graph falls
+ * apart into communities. The partition with the highest modularity,
+ * measured on the original graph, is kept.
+ * <p>
+ * Removing an edge only changes the shortest paths inside the
+ * component it was in, so after each removal the edge betweenness is
+ * found again only within that component, or the two it splits into;
+ * every other component keeps its scores. The graph is held in index
+ * arrays with one id per undirected edge, and betweenness is found by
+ * the Brandes pass that BetweennessCentrality uses, skipping removed
+ * edges.
+ * <p>
+ * The rest of the work per removal is kept to the component it splits
+ * as well: each component holds a slice of one array of members, and
+ * its edge of highest betweenness, which a heap orders across the
+ * components to find the next edge to remove. Modularity is kept as a
+ * sum of one term per component, and only the terms of the two halves
+ * of a split are found again.
+ * <p>
+ * Direction and weights are ignored, as is any edge repeated between
+ * the same two vertices.
+ *
+ * @author Kirsty Williams
+ */
+public class GirvanNewman {
+	private final int n;
+	private final int[] offsets; // the edges of v are slots offsets[v] .. offsets[v+1]-1
+	private final int[] targets; // the far end of each slot
+	private final int[] edges; // the undirected edge of each slot
+	private final int[] ends; // the two vertices of edge e are ends[2e] and ends[2e+1]
+	private final boolean[] removed;
+	private final double[] betweenness;
+	private final int[] component;
+	private int components;
+	private final Brandes brandes;
+
+	// the members of component c are members[start[c]] .. members[start[c]+size[c]-1]
+	private final int[] members;
+	private final int[] start;
+	private final int[] size;
+	private final int[] seen; // stamp of the last split() that reached each vertex
+	private int stamp;
+	private final int[] order; // scratch space for split()
+
+	// the remaining edge of highest betweenness in each component, -1 if
+	// none, and a heap of the components that have one by its betweenness
+	private final int[] top;
+	private final int[] heap;
+	private final int[] position; // of each component in the heap, -1 if not in it
+	private int heapSize;
+
+	// per component, edges of the original graph inside it and edge ends in it
+	private final double[] inside;
+	private final double[] degree;
+	private double modularity;
+
+	private final ShortestPaths graph;
+	private final TDoubleArrayList modularities = new TDoubleArrayList();
+	private int[] best;
+	private double bestModularity;
+
+	/**
+	 * Removes edges until there are none left, and keeps the partition
+	 * of highest modularity.
+	 */
+	public GirvanNewman(final Graph G) {
+		this(G, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Removes edges until the graph has the given number of components,
+	 * or no edges are left, and keeps the partition of highest
+	 * modularity seen on the way.
+	 */
+	public GirvanNewman(final Graph G, final int communities) {
+		graph = new ShortestPaths(G.getVertices(), false, false);
+		n = graph.getNumVertices();
+
+		// one slot each way per undirected edge, dropping loops and repeats
+		final TLongIntHashMap ids = new TLongIntHashMap(graph.targets.length, 0.5f, -1L, -1);
+		final int[] count = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			for (int k = graph.offsets[v]; k < graph.offsets[v + 1]; k++) {
+				final int u = graph.targets[k];
+				if (u != v && ids.get(key(v, u)) < 0) {
+					ids.put(key(v, u), ids.size());
+					count[v + 1]++;
+					count[u + 1]++;
+				}//end if
+			}//end for
+		}//end for
+
+		final int m = ids.size();
+		offsets = new int[n + 1];
+		for (int v = 0; v < n; v++)
+			offsets[v + 1] = offsets[v] + count[v + 1];
+		targets = new int[2 * m];
+		edges = new int[2 * m];
+		ends = new int[2 * m];
+		final int[] fill = offsets.clone();
+		final boolean[] placed = new boolean[m];
+		for (int v = 0; v < n; v++) {
+			for (int k = graph.offsets[v]; k < graph.offsets[v + 1]; k++) {
+				final int u = graph.targets[k];
+				if (u == v)
+					continue;
+				final int e = ids.get(key(v, u));
+				if (placed[e])
+					continue;
+				placed[e] = true;
+				ends[2 * e] = v;
+				ends[2 * e + 1] = u;
+				targets[fill[v]] = u;
+				edges[fill[v]++] = e;
+				targets[fill[u]] = v;
+				edges[fill[u]++] = e;
+			}//end for
+		}//end for
+
+		removed = new boolean[m];
+		betweenness = new double[m];
+		component = new int[n];
+		brandes = new Brandes(offsets, targets, edges, null);
+		members = new int[n];
+		start = new int[n];
+		size = new int[n];
+		seen = new int[n];
+		order = new int[n];
+		top = new int[n];
+		heap = new int[n];
+		position = new int[n];
+		inside = new double[n];
+		degree = new double[n];
+
+		Arrays.fill(component, -1);
+		Arrays.fill(position, -1);
+		int filled = 0;
+		for (int v = 0; v < n; v++) {
+			if (component[v] < 0) {
+				final int c = components++;
+				start[c] = filled;
+				filled = label(v, c, filled);
+				size[c] = filled - start[c];
+				score(c);
+			}//end if
+		}//end for
+
+		modularity = 0;
+		for (int c = 0; c < components; c++) {
+			count(c, -1);
+			modularity += term(c);
+		}//end for
+		best = component.clone();
+		bestModularity = modularity;
+		modularities.add(bestModularity);
+
+		while (heapSize > 0 && components < communities) {
+			// remove the edge of highest betweenness
+			final int cut = top[heap[0]];
+			removed[cut] = true;
+
+			// find the betweenness again where the paths have changed
+			final int u = ends[2 * cut], v = ends[2 * cut + 1];
+			final int c = component[u];
+			if (!split(c, u)) {
+				score(c);
+				continue;
+			}//end if
+
+			final int d = component[v];
+			score(c);
+			score(d);
+
+			modularity -= term(c);
+			count(d, c);
+			modularity += term(c) + term(d);
+			modularities.add(modularity);
+			if (modularity > bestModularity) {
+				bestModularity = modularity;
+				best = component.clone();
+			}//end if
+		}//end while
+	}
+
+	private static long key(final int v, final int u) {
+		return v < u ? (long) v << 32 | u : (long) u << 32 | v;
+	}
+
+	/**
+	 * Puts every vertex reachable from s over the remaining edges in
+	 * component c, appending them to members from the given slot on, and
+	 * returns the slot after the last.
+	 */
+	private int label(final int s, final int c, int tail) {
+		int head = tail;
+		members[tail++] = s;
+		component[s] = c;
+		while (head < tail) {
+			final int v = members[head++];
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				final int u = targets[k];
+				if (!removed[edges[k]] && component[u] != c) {
+					component[u] = c;
+					members[tail++] = u;
+				}//end if
+			}//end for
+		}//end while
+		return tail;
+	}
+
+	/**
+	 * After an edge of component c is removed, checks whether s still
+	 * reaches all of it. If not, the vertices s reaches stay in c and the
+	 * rest, the other side of the edge, become a new component; both keep
+	 * a slice of c's members. Costs time in the size of c only.
+	 */
+	private boolean split(final int c, final int s) {
+		stamp++;
+		int head = 0, tail = 0;
+		order[tail++] = s;
+		seen[s] = stamp;
+		while (head < tail) {
+			final int v = order[head++];
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				final int u = targets[k];
+				if (!removed[edges[k]] && seen[u] != stamp) {
+					seen[u] = stamp;
+					order[tail++] = u;
+				}//end if
+			}//end for
+		}//end while
+		if (tail == size[c])
+			return false;
+
+		// the vertices s reached to the front of c's slice
+		int i = start[c], j = start[c] + size[c] - 1;
+		while (i <= j) {
+			if (seen[members[i]] == stamp) {
+				i++;
+			} else {
+				final int swap = members[i];
+				members[i] = members[j];
+				members[j--] = swap;
+			}//end if
+		}//end while
+
+		final int d = components++;
+		start[d] = start[c] + tail;
+		size[d] = size[c] - tail;
+		size[c] = tail;
+		for (i = start[d]; i < start[d] + size[d]; i++)
+			component[members[i]] = d;
+		return true;
+	}
+
+	/**
+	 * Finds the edge betweenness of component c from scratch, by a
+	 * Brandes pass from each of its members, and its remaining edge of
+	 * highest betweenness, the lowest numbered of equals.
+	 */
+	private void score(final int c) {
+		final int from = start[c], to = start[c] + size[c];
+		for (int i = from; i < to; i++) {
+			final int v = members[i];
+			for (int k = offsets[v]; k < offsets[v + 1]; k++)
+				betweenness[edges[k]] = 0;
+		}//end for
+
+		for (int i = from; i < to; i++)
+			brandes.run(members[i], removed, null, betweenness);
+
+		int cut = -1;
+		for (int i = from; i < to; i++) {
+			final int v = members[i];
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				final int e = edges[k];
+				if (!removed[e] && (cut < 0 || above(e, cut)))
+					cut = e;
+			}//end for
+		}//end for
+		top[c] = cut;
+		reorder(c);
+	}
+
+	/* whether edge e is cut before edge f */
+	private boolean above(final int e, final int f) {
+		return betweenness[e] > betweenness[f] || betweenness[e] == betweenness[f] && e < f;
+	}
+
+	/**
+	 * Counts the original edges inside component c and the edge ends in
+	 * it. If c was split off from component from, those are taken off
+	 * from's counts, along with the edges between the two.
+	 */
+	private void count(final int c, final int from) {
+		double in = 0, ends = 0, across = 0;
+		for (int i = start[c]; i < start[c] + size[c]; i++) {
+			final int v = members[i];
+			ends += offsets[v + 1] - offsets[v];
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				final int other = component[targets[k]];
+				if (other == c)
+					in += 0.5;
+				else if (other == from)
+					across++;
+			}//end for
+		}//end for
+
+		inside[c] = in;
+		degree[c] = ends;
+		if (from >= 0) {
+			inside[from] -= in + across;
+			degree[from] -= ends;
+		}//end if
+	}
+
+	/**
+	 * Component c's share of the modularity on the original graph: the
+	 * fraction of edges inside it, less the square of the fraction of
+	 * edge ends in it.
+	 */
+	private double term(final int c) {
+		final int m = removed.length;
+		if (m == 0)
+			return 0;
+		return inside[c] / m - (degree[c] / (2.0 * m)) * (degree[c] / (2.0 * m));
+	}
+
+	/* Puts component c where its top edge belongs in the heap, or takes it out if it has none */
+	private void reorder(final int c) {
+		int i = position[c];
+		if (top[c] < 0) {
+			if (i < 0)
+				return;
+			position[c] = -1;
+			final int last = heap[--heapSize];
+			if (last != c) {
+				siftUp(last, i);
+				siftDown(last, position[last]);
+			}//end if
+			return;
+		}//end if
+
+		if (i < 0)
+			i = heapSize++;
+		siftUp(c, i);
+		siftDown(c, position[c]);
+	}
+
+	/* places c at slot i or above it */
+	private void siftUp(final int c, int i) {
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			final int p = heap[parent];
+			if (!above(top[c], top[p]))
+				break;
+			heap[i] = p;
+			position[p] = i;
+			i = parent;
+		}//end while
+		heap[i] = c;
+		position[c] = i;
+	}
+
+	/* places c, now at slot i, at it or below it */
+	private void siftDown(final int c, int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && above(top[heap[child + 1]], top[heap[child]]))
+				child++;
+			final int d = heap[child];
+			if (!above(top[d], top[c]))
+				break;
+			heap[i] = d;
+			position[d] = i;
+			i = child;
+		}//end while
+		heap[i] = c;
+		position[c] = i;
+	}
+
+	/**
+	 * The community of each vertex in the partition of highest
+	 * modularity, numbered from 0.
+	 */
+	public final TObjectIntMap<Vertex> getCommunities() {
+		final int[] renumber = new int[components];
+		Arrays.fill(renumber, -1);
+		int next = 0;
+		final TObjectIntMap<Vertex> communities = new TObjectIntHashMap<Vertex>(n);
+		for (int v = 0; v < n; v++) {
+			if (renumber[best[v]] < 0)
+				renumber[best[v]] = next++;
+			communities.put(graph.getVertex(v), renumber[best[v]]);
+		}//end for
+		return communities;
+	}
+
+	public final double getModularity() {
+		return bestModularity;
+	}
+
+	/**
+	 * Modularity of the partition at each split, from the components of
+	 * the original graph onwards.
+	 */
+	public final double[] getModularities() {
+		return modularities.toArray();
+	}
+}
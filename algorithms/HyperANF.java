@@ -0,0 +1,248 @@
+package algorithms;
+
+import graph.Graph;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * Approximate neighbourhood function of a graph by HyperANF (Boldi,
+ * Rosa and Vigna, 2011). Each vertex keeps a HyperLogLog counter of the
+ * vertices within t hops of it; one pass over the edges takes every
+ * counter from t to t + 1 hops by merging in the counters of the
+ * vertex's neighbours, and the passes stop once no counter changes. The
+ * sum of the counters after pass t estimates N(t), the number of pairs
+ * (x, y) with d(x, y) <= t.
+ * <p>
+ * This needs as many passes as the diameter and 2 * n * 2^log2m bytes,
+ * independent of the number of sources, so it scales to graphs far too
+ * large for a search from every vertex. Each counter has a relative
+ * standard error of about 1.04 / sqrt(2^log2m), and the averages taken
+ * over all of them are much closer than that.
+ * <p>
+ * Each pass runs in parallel over ranges of vertices, writing only the
+ * new counters of its own range.
+ *
+ * @author Kirsty Williams
+ */
+public class HyperANF {
+	public static final int LOG2M = 6; // 64 registers per counter
+	public static final double EFFECTIVE = 0.9; // fraction of pairs within the effective diameter
+	private static final int GRAIN = 1024; // vertices per task
+
+	private final ShortestPaths graph;
+	private final int log2m;
+	private final int m;
+	private final double alpha;
+	private byte[] current;
+	private byte[] next;
+	private final TDoubleArrayList neighbourhood = new TDoubleArrayList();
+
+	/**
+	 * Follows edges in their direction if the graph is directed, with
+	 * LOG2M bits of register index.
+	 */
+	public HyperANF(final Graph G) {
+		this(new ShortestPaths(G.getVertices(), G.isDirected(), false), LOG2M, 0);
+	}
+
+	/**
+	 * @param graph - the edges to follow; weights are ignored
+	 * @param log2m - bits of register index, 4 to 16; each extra bit
+	 * doubles the memory and cuts the error by sqrt(2)
+	 * @param seed - for the hash of the vertices
+	 */
+	public HyperANF(final ShortestPaths graph, final int log2m, final long seed) {
+		if (log2m < 4 || log2m > 16)
+			throw new IllegalArgumentException("log2m must be between 4 and 16: " + log2m);
+
+		final int n = graph.getNumVertices();
+		this.graph = graph;
+		this.log2m = log2m;
+		this.m = 1 << log2m;
+		if ((long) n * m > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException(n + " counters of " + m + " registers do not fit in an array");
+		this.alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+
+		current = new byte[n * m];
+		next = new byte[n * m];
+		for (int v = 0; v < n; v++)
+			add(v, seed);
+
+		final ForkJoinPool pool = new ForkJoinPool(graph.getThreads());
+		try {
+			neighbourhood.add(pool.invoke(new Pass(0, n, false)).estimate);
+			while (true) {
+				final Result r = pool.invoke(new Pass(0, n, true));
+				if (!r.changed)
+					break;
+				neighbourhood.add(r.estimate);
+
+				final byte[] swap = current;
+				current = next;
+				next = swap;
+			}//end while
+		} finally {
+			pool.shutdown();
+		}//end try
+
+		current = null;
+		next = null;
+	}
+
+	/* Adds vertex v to its own counter */
+	private void add(final int v, final long seed) {
+		// fmix64 from MurmurHash3
+		long h = v + seed * 0x9e3779b97f4a7c15L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		final int register = (int) (h >>> (64 - log2m));
+		final int rank = Long.numberOfLeadingZeros((h << log2m) | (1L << (log2m - 1))) + 1;
+		current[v * m + register] = (byte) rank;
+	}
+
+	/* HyperLogLog estimate of the counter at offset */
+	private double estimate(final byte[] counters, final int offset) {
+		double sum = 0;
+		int zeros = 0;
+		for (int j = offset; j < offset + m; j++) {
+			sum += 1.0 / (1L << counters[j]);
+			if (counters[j] == 0)
+				zeros++;
+		}//end for
+
+		final double e = alpha * m * m / sum;
+		if (e <= 2.5 * m && zeros > 0)
+			return m * Math.log((double) m / zeros); // linear counting
+		return e;
+	}
+
+	private static final class Result {
+		double estimate;
+		boolean changed;
+	}
+
+	/**
+	 * Merges the neighbours' counters into the counters of a range of
+	 * vertices, or with merge false only estimates them.
+	 */
+	private final class Pass extends RecursiveTask<Result> {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		private final boolean merge;
+
+		Pass(final int from, final int to, final boolean merge) {
+			this.from = from;
+			this.to = to;
+			this.merge = merge;
+		}
+
+		protected Result compute() {
+			if (to - from > GRAIN) {
+				final int mid = (from + to) >>> 1;
+				final Pass right = new Pass(mid, to, merge);
+				right.fork();
+				final Result r = new Pass(from, mid, merge).compute();
+				final Result s = right.join();
+				r.estimate += s.estimate;
+				r.changed |= s.changed;
+				return r;
+			}//end if
+
+			final Result r = new Result();
+			final int[] offsets = graph.offsets;
+			final int[] targets = graph.targets;
+			for (int v = from; v < to; v++) {
+				final int at = v * m;
+				if (!merge) {
+					r.estimate += estimate(current, at);
+					continue;
+				}//end if
+
+				System.arraycopy(current, at, next, at, m);
+				boolean changed = false;
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					final int u = targets[k] * m;
+					for (int j = 0; j < m; j++) {
+						if (current[u + j] > next[at + j]) {
+							next[at + j] = current[u + j];
+							changed = true;
+						}//end if
+					}//end for
+				}//end for
+
+				r.changed |= changed;
+				r.estimate += changed ? estimate(next, at) : estimate(current, at);
+			}//end for
+			return r;
+		}
+	}
+
+	/**
+	 * The estimated neighbourhood function: element t is the number of
+	 * pairs (x, y), including x = y, with a path of at most t hops from
+	 * x to y. The last element counts every pair with a path.
+	 */
+	public final double[] getNeighbourhoodFunction() {
+		return neighbourhood.toArray();
+	}
+
+	/**
+	 * Passes over the edges before the counters stopped changing, which
+	 * is a lower bound on the diameter and usually equal to it.
+	 */
+	public final int getDiameterLowerBound() {
+		return neighbourhood.size() - 1;
+	}
+
+	/**
+	 * Estimated mean length of the shortest paths between the pairs of
+	 * distinct vertices that have a path, the characteristic path length.
+	 */
+	public final double getAveragePathLength() {
+		final int T = neighbourhood.size() - 1;
+		final double pairs = neighbourhood.get(T) - neighbourhood.get(0);
+		if (pairs <= 0)
+			return Double.NaN;
+
+		double sum = 0;
+		for (int t = 1; t <= T; t++)
+			sum += t * (neighbourhood.get(t) - neighbourhood.get(t - 1));
+		return sum / pairs;
+	}
+
+	/**
+	 * The EFFECTIVE effective diameter.
+	 */
+	public final double getEffectiveDiameter() {
+		return getEffectiveDiameter(EFFECTIVE);
+	}
+
+	/**
+	 * Estimated number of hops, interpolated between whole hops, within
+	 * which the given fraction of the pairs of distinct vertices that have
+	 * a path lie.
+	 */
+	public final double getEffectiveDiameter(final double fraction) {
+		final int T = neighbourhood.size() - 1;
+		final double self = neighbourhood.get(0);
+		final double target = fraction * (neighbourhood.get(T) - self);
+		if (T == 0)
+			return 0;
+
+		for (int t = 1; t <= T; t++) {
+			final double below = neighbourhood.get(t - 1) - self;
+			final double within = neighbourhood.get(t) - self;
+			if (within >= target)
+				return within == below ? t : t - 1 + (target - below) / (within - below);
+		}//end for
+		return T;
+	}
+}
@@ -0,0 +1,461 @@
+package algorithms;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import graph.Graph;
+import graph.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Community detection by the Louvain method (Blondel, Guillaume,
+ * Lambiotte and Lefebvre, 2008), which greedily raises modularity one
+ * level at a time:
+ * <ol>
+ * <li>Local moving: starting with each vertex in a community of its
+ * own, vertices move to the neighbouring community that gains the most
+ * modularity, until no move gains more than TOLERANCE.</li>
+ * <li>Aggregation: each community becomes a vertex of the next level's
+ * graph, with the edges between two communities merged into one edge of
+ * their summed weight and the edges inside a community into a loop.</li>
+ * </ol>
+ * The levels stop once local moving merges nothing.
+ * <p>
+ * Each graph is held in primitive adjacency arrays, so the method
+ * scales to graphs of tens of millions of edges. Local moving runs in
+ * parallel by colour (Lu, Halappanavar and Kalyanaraman, 2015): the
+ * vertices are greedily coloured so that no two neighbours share a
+ * colour, and each round takes the colours in turn, with every vertex
+ * of the colour proposing its best move in parallel and the moves then
+ * applied in order. Vertices of one colour never move on a stale idea
+ * of each other's communities, as neighbours proposing together would,
+ * and the proposals depend only on the state before the colour, so the
+ * result is the same however many threads are used. Moves applied
+ * together can still undo each other's gains, so a round that lowers
+ * modularity is rolled back and ends the local moving.
+ * <p>
+ * Direction is ignored; edge weights are used if the graph is weighted.
+ * The Leiden refinement, which splits badly connected communities
+ * before aggregation, is not done.
+ *
+ * @author Kirsty Williams
+ */
+public class Louvain {
+	public static final int MAX_ROUNDS = 100; // local moving rounds per level
+	public static final double TOLERANCE = 1e-6; // least modularity gain a round must make
+	private static final int GRAIN = 1024; // vertices per task
+
+	/**
+	 * One level's graph: each undirected edge is a slot from each end,
+	 * and the edges inside an aggregated vertex are its loop weight,
+	 * counted from both ends.
+	 */
+	private static final class Level {
+		final int n;
+		final int[] offsets;
+		final int[] targets;
+		final double[] weights;
+		final double[] loops;
+		final double[] degree;
+		final double total; // sum of the degrees, twice the edge weight
+
+		Level(final int[] offsets, final int[] targets, final double[] weights, final double[] loops) {
+			this.n = loops.length;
+			this.offsets = offsets;
+			this.targets = targets;
+			this.weights = weights;
+			this.loops = loops;
+			this.degree = new double[n];
+			double total = 0;
+			for (int v = 0; v < n; v++) {
+				double d = loops[v];
+				for (int k = offsets[v]; k < offsets[v + 1]; k++)
+					d += weights[k];
+				degree[v] = d;
+				total += d;
+			}//end for
+			this.total = total;
+		}
+	}
+
+	/**
+	 * Per thread space for adding up the weight to each neighbouring
+	 * community. A community is marked when first met rather than told
+	 * by a weight of zero, which an edge of weight zero would also give.
+	 */
+	private static final class Scratch {
+		final double[] weightTo;
+		final boolean[] marked;
+		final int[] touched;
+
+		Scratch(final int n) {
+			weightTo = new double[n];
+			marked = new boolean[n];
+			touched = new int[n];
+		}
+	}
+
+	private final ShortestPaths graph;
+	private final List<int[]> levels = new ArrayList<int[]>();
+	private final TDoubleArrayList modularities = new TDoubleArrayList();
+	private final ForkJoinPool pool;
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+
+	public Louvain(final Graph G) {
+		this(G, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads - number of threads local moving runs on
+	 */
+	public Louvain(final Graph G, final int threads) {
+		graph = new ShortestPaths(G.getVertices(), false, G.isWeighted());
+		final int n = graph.getNumVertices();
+
+		// slots of the first level; a loop is a slot to itself
+		final int[] targets = graph.targets.clone();
+		final double[] weights = new double[targets.length];
+		final double[] loops = new double[n];
+		for (int k = 0; k < weights.length; k++)
+			weights[k] = graph.weights == null ? 1 : graph.weights[k];
+		Level level = new Level(graph.offsets.clone(), targets, weights, loops);
+
+		final int[] membership = new int[n];
+		for (int v = 0; v < n; v++)
+			membership[v] = v;
+
+		pool = new ForkJoinPool(Math.max(1, threads));
+		try {
+			while (level.n > 0) {
+				final int[] community = move(level);
+				final int[] renumber = new int[level.n];
+				final int communities = renumber(community, renumber);
+				if (communities == level.n && !levels.isEmpty())
+					break;
+
+				for (int v = 0; v < n; v++)
+					membership[v] = renumber[community[membership[v]]];
+				levels.add(membership.clone());
+				modularities.add(modularity(level, community));
+
+				if (communities == level.n)
+					break;
+				level = aggregate(level, community, renumber, communities);
+			}//end while
+		} finally {
+			pool.shutdown();
+		}//end try
+	}
+
+	/**
+	 * Local moving on one level.
+	 *
+	 * @return the community of each vertex
+	 */
+	private int[] move(final Level level) {
+		final int n = level.n;
+		final int[] community = new int[n];
+		final double[] tot = level.degree.clone(); // degree of each community
+		for (int v = 0; v < n; v++)
+			community[v] = v;
+		if (level.total == 0)
+			return community;
+
+		// greedy colouring, then the vertices grouped by colour
+		final int[] colour = new int[n];
+		Arrays.fill(colour, -1);
+		final boolean[] used = new boolean[n + 1];
+		int colours = 0;
+		for (int v = 0; v < n; v++) {
+			for (int k = level.offsets[v]; k < level.offsets[v + 1]; k++) {
+				if (colour[level.targets[k]] >= 0)
+					used[colour[level.targets[k]]] = true;
+			}//end for
+			int c = 0;
+			while (used[c])
+				c++;
+			colour[v] = c;
+			colours = Math.max(colours, c + 1);
+			for (int k = level.offsets[v]; k < level.offsets[v + 1]; k++) {
+				if (colour[level.targets[k]] >= 0)
+					used[colour[level.targets[k]]] = false;
+			}//end for
+		}//end for
+
+		final int[] start = new int[colours + 1];
+		for (int v = 0; v < n; v++)
+			start[colour[v] + 1]++;
+		for (int c = 0; c < colours; c++)
+			start[c + 1] += start[c];
+		final int[] order = new int[n];
+		final int[] fill = start.clone();
+		for (int v = 0; v < n; v++)
+			order[fill[colour[v]]++] = v;
+
+		// the partition before each round, to go back to if the round made it worse
+		final int[] proposal = new int[n];
+		final int[] previous = new int[n];
+		final double[] previousTot = new double[n];
+		double q = modularity(level, community);
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			System.arraycopy(community, 0, previous, 0, n);
+			System.arraycopy(tot, 0, previousTot, 0, n);
+			for (int c = 0; c < colours; c++) {
+				pool.invoke(new Propose(level, community, tot, order, proposal, start[c], start[c + 1]));
+
+				for (int i = start[c]; i < start[c + 1]; i++) {
+					final int v = order[i];
+					final int to = proposal[v];
+					if (to != community[v]) {
+						tot[community[v]] -= level.degree[v];
+						tot[to] += level.degree[v];
+						community[v] = to;
+					}//end if
+				}//end for
+			}//end for
+
+			final double next = modularity(level, community);
+			if (next < q) {
+				// moves made at the same time can undo each other's gains
+				System.arraycopy(previous, 0, community, 0, n);
+				System.arraycopy(previousTot, 0, tot, 0, n);
+				break;
+			}//end if
+			if (next - q < TOLERANCE)
+				break;
+			q = next;
+		}//end for
+		return community;
+	}
+
+	/**
+	 * Finds the best move for each vertex of a range of order.
+	 */
+	private final class Propose extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Level level;
+		private final int[] community;
+		private final double[] tot;
+		private final int[] order;
+		private final int[] proposal;
+		private final int from;
+		private final int to;
+
+		Propose(final Level level, final int[] community, final double[] tot, final int[] order,
+				final int[] proposal, final int from, final int to) {
+			this.level = level;
+			this.community = community;
+			this.tot = tot;
+			this.order = order;
+			this.proposal = proposal;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > GRAIN) {
+				final int mid = (from + to) >>> 1;
+				invokeAll(new Propose(level, community, tot, order, proposal, from, mid),
+						new Propose(level, community, tot, order, proposal, mid, to));
+				return;
+			}//end if
+
+			Scratch s = scratch.get();
+			if (s == null || s.weightTo.length < level.n) {
+				s = new Scratch(level.n);
+				scratch.set(s);
+			}//end if
+
+			for (int i = from; i < to; i++)
+				proposal[order[i]] = best(order[i], s);
+		}
+
+		/*
+		 * The gain of moving v from its own community, taken out of it, into
+		 * c is proportional to weightTo[c] - tot[c] * degree[v] / total.
+		 */
+		private int best(final int v, final Scratch s) {
+			final int own = community[v];
+			final double k = level.degree[v];
+			int touched = 0;
+			for (int i = level.offsets[v]; i < level.offsets[v + 1]; i++) {
+				final int u = level.targets[i];
+				if (u == v)
+					continue;
+				final int c = community[u];
+				if (!s.marked[c]) {
+					s.marked[c] = true;
+					s.touched[touched++] = c;
+				}//end if
+				s.weightTo[c] += level.weights[i];
+			}//end for
+
+			int best = own;
+			double bestGain = s.weightTo[own] - (tot[own] - k) * k / level.total;
+			for (int i = 0; i < touched; i++) {
+				final int c = s.touched[i];
+				if (c != own) {
+					final double gain = s.weightTo[c] - tot[c] * k / level.total;
+					if (gain > bestGain || (gain == bestGain && c < best)) {
+						best = c;
+						bestGain = gain;
+					}//end if
+				}//end if
+				s.weightTo[c] = 0;
+				s.marked[c] = false;
+			}//end for
+			s.weightTo[own] = 0;
+			return best;
+		}
+	}
+
+	/**
+	 * Numbers the communities in use from 0, in order of first vertex.
+	 *
+	 * @return the number of communities
+	 */
+	private static int renumber(final int[] community, final int[] renumber) {
+		Arrays.fill(renumber, -1);
+		int next = 0;
+		for (int v = 0; v < community.length; v++) {
+			if (renumber[community[v]] < 0)
+				renumber[community[v]] = next++;
+		}//end for
+		return next;
+	}
+
+	/**
+	 * The next level's graph, with one vertex per community.
+	 */
+	private static Level aggregate(final Level level, final int[] community, final int[] renumber,
+			final int communities) {
+		// the vertices of each community together
+		final int[] start = new int[communities + 1];
+		for (int v = 0; v < level.n; v++)
+			start[renumber[community[v]] + 1]++;
+		for (int c = 0; c < communities; c++)
+			start[c + 1] += start[c];
+		final int[] members = new int[level.n];
+		final int[] fill = start.clone();
+		for (int v = 0; v < level.n; v++)
+			members[fill[renumber[community[v]]]++] = v;
+
+		final int[] offsets = new int[communities + 1];
+		final double[] loops = new double[communities];
+		final double[] weightTo = new double[communities];
+		final boolean[] marked = new boolean[communities];
+		final int[] touched = new int[communities];
+		int[] targets = new int[Math.max(16, level.targets.length / 2)];
+		double[] weights = new double[targets.length];
+		int slots = 0;
+
+		for (int c = 0; c < communities; c++) {
+			int count = 0;
+			for (int m = start[c]; m < start[c + 1]; m++) {
+				final int v = members[m];
+				loops[c] += level.loops[v];
+				for (int k = level.offsets[v]; k < level.offsets[v + 1]; k++) {
+					final int d = renumber[community[level.targets[k]]];
+					if (d == c) {
+						loops[c] += level.weights[k];
+					} else {
+						if (!marked[d]) {
+							marked[d] = true;
+							touched[count++] = d;
+						}//end if
+						weightTo[d] += level.weights[k];
+					}//end if
+				}//end for
+			}//end for
+
+			if (slots + count > targets.length) {
+				final int size = Math.max(targets.length * 2, slots + count);
+				targets = Arrays.copyOf(targets, size);
+				weights = Arrays.copyOf(weights, size);
+			}//end if
+			for (int i = 0; i < count; i++) {
+				targets[slots] = touched[i];
+				weights[slots++] = weightTo[touched[i]];
+				weightTo[touched[i]] = 0;
+				marked[touched[i]] = false;
+			}//end for
+			offsets[c + 1] = slots;
+		}//end for
+
+		return new Level(offsets, Arrays.copyOf(targets, slots), Arrays.copyOf(weights, slots), loops);
+	}
+
+	/**
+	 * Modularity of a partition of a level: the sum over communities of
+	 * the fraction of the weight inside it, less the square of the
+	 * fraction of the degree in it.
+	 */
+	private static double modularity(final Level level, final int[] community) {
+		if (level.total == 0)
+			return 0;
+
+		final double[] inside = new double[level.n];
+		final double[] tot = new double[level.n];
+		for (int v = 0; v < level.n; v++) {
+			final int c = community[v];
+			tot[c] += level.degree[v];
+			inside[c] += level.loops[v];
+			for (int k = level.offsets[v]; k < level.offsets[v + 1]; k++) {
+				if (community[level.targets[k]] == c)
+					inside[c] += level.weights[k];
+			}//end for
+		}//end for
+
+		double q = 0;
+		for (int c = 0; c < level.n; c++) {
+			if (tot[c] > 0)
+				q += inside[c] / level.total - (tot[c] / level.total) * (tot[c] / level.total);
+		}//end for
+		return q;
+	}
+
+	/**
+	 * The community of each vertex after the last level, numbered from 0.
+	 */
+	public final TObjectIntMap<Vertex> getCommunities() {
+		return getCommunities(levels.size() - 1);
+	}
+
+	/**
+	 * The community of each vertex after the given level, from 0.
+	 */
+	public final TObjectIntMap<Vertex> getCommunities(final int level) {
+		final int n = graph.getNumVertices();
+		final TObjectIntMap<Vertex> communities = new TObjectIntHashMap<Vertex>(n);
+		if (n == 0)
+			return communities;
+
+		final int[] membership = levels.get(level);
+		for (int v = 0; v < n; v++)
+			communities.put(graph.getVertex(v), membership[v]);
+		return communities;
+	}
+
+	public final int getLevels() {
+		return levels.size();
+	}
+
+	/**
+	 * Modularity of the partition after the last level.
+	 */
+	public final double getModularity() {
+		return modularities.isEmpty() ? 0 : modularities.get(modularities.size() - 1);
+	}
+
+	/**
+	 * Modularity of the partition after each level.
+	 */
+	public final double[] getModularities() {
+		return modularities.toArray();
+	}
+}
@@ -0,0 +1,401 @@
+package algorithms;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import graph.Edge;
+import graph.Graph;
+import graph.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utils.DistanceMatrix;
+
+/**
+ * All-pairs shortest paths as one single-source search per vertex: a
+ * breadth first search when the graph is unweighted, Dijkstra's
+ * algorithm when it is weighted. The graph is copied once into
+ * compressed sparse row arrays indexed 0..n-1, and each source's row of
+ * distances is handed to a RowConsumer as soon as it is found, so only
+ * O(n + m) memory is needed per thread unless the consumer keeps the
+ * rows itself.
+ * <p>
+ * Aggregates such as the characteristic path length sum each row and
+ * drop it; a full matrix is only built when a consumer that stores the
+ * rows is passed in.
+ * <p>
+ * Edge weights must not be negative.
+ *
+ * @author Kirsty Williams
+ */
+public class ShortestPaths {
+	public static final float UNREACHABLE = DistanceMatrix.UNREACHABLE;
+
+	/**
+	 * Receives the distances from one source to every vertex.
+	 */
+	public interface RowConsumer {
+		/**
+		 * When more than one thread is used this is called from all of
+		 * them at once. The row belongs to the search and is overwritten
+		 * once this returns, so it must be copied to be kept.
+		 *
+		 * @param source - index of the source vertex
+		 * @param distance - distance to each vertex by index, UNREACHABLE
+		 * if there is no path
+		 */
+		public void row(int source, float[] distance);
+	}
+
+	private final Vertex[] vertices;
+	private final TObjectIntHashMap<Vertex> index;
+	final int[] offsets; // the neighbours of v are targets[offsets[v]] .. targets[offsets[v+1]-1]
+	final int[] targets;
+	final float[] weights; // parallel to targets, or null if unweighted
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Follows edges in their direction if the graph is directed.
+	 */
+	public ShortestPaths(final Graph G) {
+		this(G, false);
+	}
+
+	/**
+	 * @param ignoreDirection - follow edges both ways even if the graph
+	 * is directed
+	 */
+	public ShortestPaths(final Graph G, final boolean ignoreDirection) {
+		this(G.getVertices(), G.isDirected() && !ignoreDirection, G.isWeighted());
+	}
+
+	/**
+	 * @param V - the vertices; edges to vertices outside V are ignored
+	 * @param directed - only follow an edge from its getVertexFrom()
+	 * @param weighted - use the edge weights rather than counting hops
+	 */
+	public ShortestPaths(final Collection<Vertex> V, final boolean directed, final boolean weighted) {
+		final int n = V.size();
+		vertices = new Vertex[n];
+		index = new TObjectIntHashMap<Vertex>(n, 0.5f, -1);
+		int i = 0;
+		for (Vertex v : V) {
+			vertices[i] = v;
+			index.put(v, i++);
+		}//end for
+
+		// count, then fill
+		offsets = new int[n + 1];
+		for (i = 0; i < n; i++) {
+			int degree = 0;
+			for (Edge e : vertices[i].getEdges()) {
+				if (other(e, vertices[i], directed) >= 0)
+					degree++;
+			}//end for
+			offsets[i + 1] = offsets[i] + degree;
+		}//end for
+
+		targets = new int[offsets[n]];
+		weights = weighted ? new float[offsets[n]] : null;
+		for (i = 0; i < n; i++) {
+			int k = offsets[i];
+			for (Edge e : vertices[i].getEdges()) {
+				final int u = other(e, vertices[i], directed);
+				if (u < 0)
+					continue;
+				targets[k] = u;
+				if (weighted)
+					weights[k] = e.getWeight();
+				k++;
+			}//end for
+		}//end for
+	}
+
+	/**
+	 * Index of the far end of e from v, or -1 if e cannot be followed
+	 * from v or leads out of the vertex set.
+	 */
+	private int other(final Edge e, final Vertex v, final boolean directed) {
+		if (directed && e.getVertexFrom() != v)
+			return -1;
+		final Vertex u = e.getVertexTo() == v ? e.getVertexFrom() : e.getVertexTo();
+		return index.get(u);
+	}
+
+	/**
+	 * Sets the number of threads forEachSource() runs on. With one
+	 * thread the rows arrive in order on the caller's thread.
+	 */
+	public final void setThreads(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public final int getThreads() {
+		return threads;
+	}
+
+	public final int getNumVertices() {
+		return vertices.length;
+	}
+
+	public final boolean isWeighted() {
+		return weights != null;
+	}
+
+	public final Vertex getVertex(final int v) {
+		return vertices[v];
+	}
+
+	/**
+	 * @return the index of v, or -1 if v is not in the graph
+	 */
+	public final int indexOf(final Vertex v) {
+		return index.get(v);
+	}
+
+	/**
+	 * Finds the distances from one source on the caller's thread.
+	 *
+	 * @param distance - receives the row; must have room for every vertex
+	 */
+	public final void distances(final int source, final float[] distance) {
+		new Search().run(source, distance);
+	}
+
+	/**
+	 * Finds the row of every vertex and passes each to consumer.
+	 */
+	public final void forEachSource(final RowConsumer consumer) {
+		final int[] sources = new int[vertices.length];
+		for (int i = 0; i < sources.length; i++)
+			sources[i] = i;
+		forEachSource(sources, consumer);
+	}
+
+	/**
+	 * Finds every row and writes it to matrix, which must have one row
+	 * and column per vertex, in index order. For a graph too large for
+	 * an ArrayDistanceMatrix, pass a MappedDistanceMatrix.
+	 */
+	public final void fill(final DistanceMatrix matrix) {
+		if (matrix.size() != vertices.length)
+			throw new IllegalArgumentException("Matrix of size " + matrix.size()
+					+ " for " + vertices.length + " vertices");
+
+		forEachSource(new RowConsumer() {
+			public void row(final int source, final float[] distance) {
+				matrix.setRow(source, distance);
+			}
+		});
+	}
+
+	/**
+	 * Finds the row of each of the given sources and passes each to
+	 * consumer. The sources are shared out between the threads one at a
+	 * time, so a few slow searches do not hold up the rest.
+	 */
+	public final void forEachSource(final int[] sources, final RowConsumer consumer) {
+		final AtomicInteger next = new AtomicInteger();
+		final int workers = Math.min(threads, sources.length);
+		if (workers <= 1) {
+			search(sources, next, consumer);
+			return;
+		}//end if
+
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers);
+		for (int t = 0; t < workers; t++) {
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					search(sources, next, consumer);
+					return null;
+				}
+			});
+		}//end for
+
+		final ForkJoinPool pool = new ForkJoinPool(workers);
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while finding shortest paths", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}//end try
+	}
+
+	/* Takes sources until there are none left, with one search and row */
+	private void search(final int[] sources, final AtomicInteger next, final RowConsumer consumer) {
+		final Search search = new Search();
+		final float[] distance = new float[vertices.length];
+		int i;
+		while ((i = next.getAndIncrement()) < sources.length) {
+			search.run(sources[i], distance);
+			consumer.row(sources[i], distance);
+		}//end while
+	}
+
+	/**
+	 * Scratch space for searches run one after another on the caller's
+	 * thread, for algorithms such as Diameter that pick each source from
+	 * the result of the last search.
+	 */
+	final Search newSearch() {
+		return new Search();
+	}
+
+	/**
+	 * Scratch space for one search at a time: a queue for breadth first
+	 * search, or an indexed binary heap for Dijkstra.
+	 */
+	final class Search {
+		private final int[] queue = new int[vertices.length]; // also the heap
+		private final int[] position; // of each vertex in the heap, -1 if not in it
+		private final int[] reached; // vertices reached by the last search; the queue itself for breadth first search
+		private int numReached = 0;
+
+		Search() {
+			if (weights == null) {
+				position = null;
+				reached = queue;
+			} else {
+				position = new int[vertices.length];
+				Arrays.fill(position, -1);
+				reached = new int[vertices.length];
+			}//end if
+		}
+
+		void run(final int source, final float[] distance) {
+			Arrays.fill(distance, 0, vertices.length, UNREACHABLE);
+			numReached = 0;
+			search(source, distance);
+		}
+
+		/**
+		 * Like run(), but distance must hold the row of the last search
+		 * on this Search, or UNREACHABLE everywhere, and only the vertices
+		 * that search reached are cleared. A search then costs time in
+		 * the vertices and edges it reaches rather than in n.
+		 *
+		 * @return the number of vertices reached, including the source
+		 */
+		int next(final int source, final float[] distance) {
+			for (int i = 0; i < numReached; i++)
+				distance[reached[i]] = UNREACHABLE;
+			search(source, distance);
+			return numReached;
+		}
+
+		/**
+		 * The i-th vertex reached by the last search. After a breadth
+		 * first search they are in order of distance, so the last one
+		 * is as far from the source as any.
+		 */
+		int getReached(final int i) {
+			return reached[i];
+		}
+
+		private void search(final int source, final float[] distance) {
+			distance[source] = 0;
+			if (weights == null)
+				breadthFirst(source, distance);
+			else
+				dijkstra(source, distance);
+		}
+
+		private void breadthFirst(final int source, final float[] distance) {
+			int head = 0, tail = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				final int v = queue[head++];
+				final float d = distance[v] + 1;
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					final int u = targets[k];
+					if (distance[u] == UNREACHABLE) {
+						distance[u] = d;
+						queue[tail++] = u;
+					}//end if
+				}//end for
+			}//end while
+			numReached = tail;
+		}
+
+		private void dijkstra(final int source, final float[] distance) {
+			// every vertex leaves the heap again, so position is all -1 between searches
+			int size = 0;
+			queue[size] = source;
+			position[source] = size++;
+			numReached = 0;
+			reached[numReached++] = source;
+
+			while (size > 0) {
+				final int v = queue[0];
+				position[v] = -1;
+				if (--size > 0)
+					siftDown(queue[size], 0, size, distance);
+
+				final float dv = distance[v];
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					final int u = targets[k];
+					final float d = dv + weights[k];
+					if (d >= distance[u])
+						continue;
+
+					if (distance[u] == UNREACHABLE)
+						reached[numReached++] = u;
+					distance[u] = d;
+					int i = position[u];
+					if (i < 0)
+						i = size++;
+					siftUp(u, i, distance);
+				}//end for
+			}//end while
+		}
+
+		/* places u at slot i or above it */
+		private void siftUp(final int u, int i, final float[] distance) {
+			final float d = distance[u];
+			while (i > 0) {
+				final int parent = (i - 1) >>> 1;
+				final int p = queue[parent];
+				if (distance[p] <= d)
+					break;
+				queue[i] = p;
+				position[p] = i;
+				i = parent;
+			}//end while
+			queue[i] = u;
+			position[u] = i;
+		}
+
+		/* places u at slot i or below it, within a heap of the given size */
+		private void siftDown(final int u, int i, final int size, final float[] distance) {
+			final float d = distance[u];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && distance[queue[child + 1]] < distance[queue[child]])
+					child++;
+				final int c = queue[child];
+				if (distance[c] >= d)
+					break;
+				queue[i] = c;
+				position[c] = i;
+				i = child;
+			}//end while
+			queue[i] = u;
+			position[u] = i;
+		}
+	}
+}
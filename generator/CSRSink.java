@@ -0,0 +1,84 @@
+package graph.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the generated edges in binary compressed sparse row (CSR)
+ * form as two files:
+ * <ul>
+ * <li>base.offsets - numVertices + 1 longs, where the out-edges of
+ * vertex v are targets[offsets[v]] ... targets[offsets[v+1] - 1]</li>
+ * <li>base.targets - one int per edge, the target vertex index</li>
+ * </ul>
+ * Both files are big-endian, as written by DataOutputStream.
+ * 
+ * Only a single long offset is held in memory at a time, so the
+ * sink requires the edges to arrive grouped by source vertex in
+ * non-decreasing order. The undirected streams of the BA and WS
+ * generators satisfy this; directed streams that emit reciprocal
+ * edges do not, and are rejected with an IllegalStateException.
+ * 
+ * @author Kirsty Williams
+ */
+public class CSRSink implements EdgeSink {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final File offsetsFile;
+	private final File targetsFile;
+	private DataOutputStream offsets;
+	private DataOutputStream targets;
+	private int numVertices;
+	private int currentSource; //the vertex whose edges are being written
+	private long numEdges;
+	
+	/**
+	 * @param base - path prefix of the two output files
+	 */
+	public CSRSink(String base) {
+		this.offsetsFile = new File(base + ".offsets");
+		this.targetsFile = new File(base + ".targets");
+	}//end constructor
+	
+	public void begin(int numVertices, boolean isDirected) throws IOException {
+		this.numVertices = numVertices;
+		offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile), BUFFER_SIZE));
+		targets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(targetsFile), BUFFER_SIZE));
+		currentSource = 0;
+		numEdges = 0;
+		offsets.writeLong(0);
+	}//end begin()
+	
+	public void edge(int from, int to) throws IOException {
+		if (from < currentSource)
+			throw new IllegalStateException("Edge (" + from + ", " + to + 
+					") arrived after edges of vertex " + currentSource);
+		
+		//close off the rows of every vertex before the new source
+		while (currentSource < from) {
+			offsets.writeLong(numEdges);
+			currentSource++;
+		}//end while
+		
+		targets.writeInt(to);
+		numEdges++;
+	}//end edge()
+	
+	public void end() throws IOException {
+		while (currentSource < numVertices) {
+			offsets.writeLong(numEdges);
+			currentSource++;
+		}//end while
+		offsets.close();
+		targets.close();
+		offsets = null;
+		targets = null;
+	}//end end()
+	
+	public long getNumEdges() {
+		return numEdges;
+	}
+}
@@ -0,0 +1,49 @@
+package graph.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the generated edges as a plain text edge list, one
+ * "from to" pair per line, preceded by a comment line holding the
+ * number of vertices.
+ * 
+ * @author Kirsty Williams
+ */
+public class EdgeListSink implements EdgeSink {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final File file;
+	private Writer out;
+	private long numEdges;
+	
+	public EdgeListSink(File file) {
+		this.file = file;
+	}//end constructor
+	
+	public void begin(int numVertices, boolean isDirected) throws IOException {
+		out = new BufferedWriter(new FileWriter(file), BUFFER_SIZE);
+		out.write("# " + numVertices + (isDirected ? " directed" : " undirected") + "\n");
+		numEdges = 0;
+	}//end begin()
+	
+	public void edge(int from, int to) throws IOException {
+		out.write(Integer.toString(from));
+		out.write(' ');
+		out.write(Integer.toString(to));
+		out.write('\n');
+		numEdges++;
+	}//end edge()
+	
+	public void end() throws IOException {
+		out.close();
+		out = null;
+	}//end end()
+	
+	public long getNumEdges() {
+		return numEdges;
+	}
+}
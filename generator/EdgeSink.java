@@ -0,0 +1,35 @@
+package graph.generator;
+
+import java.io.IOException;
+
+/**
+ * Receives the edges produced by a streaming generator one at a
+ * time, so that the generator itself never has to hold the
+ * finished graph. Vertices are identified by their index in the
+ * range [0, numVertices).
+ * 
+ * The generator calls begin() once, then edge() for every edge
+ * it creates, then end() once.
+ * 
+ * @author Kirsty Williams
+ */
+public interface EdgeSink {
+	/**
+	 * Called before the first edge is emitted.
+	 * @param numVertices - the number of vertices in the graph
+	 * @param isDirected - whether the emitted edges are directed
+	 */
+	public void begin(int numVertices, boolean isDirected) throws IOException;
+
+	/**
+	 * Called once for every edge in the generated graph.
+	 * @param from - index of the source vertex
+	 * @param to - index of the target vertex
+	 */
+	public void edge(int from, int to) throws IOException;
+
+	/**
+	 * Called after the last edge has been emitted.
+	 */
+	public void end() throws IOException;
+}
@@ -0,0 +1,165 @@
+package graph.generator;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ *  Streaming variant of GraphGeneratorBAModel. Instead of building
+ *  a Graph, every edge is handed to an EdgeSink as soon as it is
+ *  created, so graphs far larger than the heap can be written
+ *  straight to disk.
+ *
+ *  Preferential attachment selects a vertex with probability
+ *  degree(u) / sum(degrees). The degrees are kept in a Fenwick
+ *  tree (8 bytes per vertex), which gives both the update after
+ *  each edge and the weighted choice in O(log n), so memory does
+ *  not grow with the number of edges. No Vertex or Edge objects
+ *  are created.
+ *
+ *  In the directed case the target of each new out-edge, and the
+ *  source of the matching in-edge, are chosen in proportion to
+ *  in-degree, as in GraphGeneratorBAModel.
+ *
+ *  @author Kirsty Williams
+ */
+public class GraphGeneratorBAModelStream {
+	/* Retries before falling back to a uniform choice, for when too
+	 * few vertices have non-zero in-degree to supply k distinct ones */
+	private static final int MAX_ATTEMPTS = 64;
+
+	private long[] weights; //Fenwick tree of the (in-)degree of each vertex
+	private long totalWeight;
+	private boolean isDirected;
+	private Random rand;
+
+	/**
+	 * Generates a Barabasi & Albert (1999) graph into the sink with a
+	 * random seed.
+	 * @see #generate(EdgeSink, int, int, int, boolean, long)
+	 */
+	public void generate(EdgeSink sink, int n, int m0, int k, boolean isDirected) throws IOException {
+		generate(sink, n, m0, k, isDirected, System.nanoTime());
+	}//end generate()
+
+	/**
+	 * Generates a Barabasi & Albert (1999) graph into the sink. The
+	 * parameters have the same meaning as in GraphGeneratorBAModel.
+	 * @param sink - receives the generated edges
+	 * @param n - the number of vertices in final graph
+	 * @param m0 - the number of vertices in initial graph
+	 * @param k - the number of edges connecting the new
+	 * vertex to pre-existing vertices
+	 * @param isDirected - whether the generated graph is
+	 * to be directed or not
+	 * @param seed - seed for the random number generator
+	 */
+	public void generate(EdgeSink sink, int n, int m0, int k, boolean isDirected, long seed) throws IOException {
+		//Make sure m0 is feasible
+		if(m0 <= 1)
+			throw new IllegalArgumentException("Number of initial unconnected vertices " +
+					m0 + " must be greater than 1");
+		if(m0 > n){
+			System.out.println("m0 (initial graph size) must be less than or equal to " +
+					"final graph size: changing from " + m0 + " to " + n);
+			m0 = n;
+		}//end if
+		if(k <= 0)
+			throw new IllegalArgumentException("Number of edges to attach " +
+					k + " must be greater than 0");
+
+		rand = new Random(seed);
+		weights = new long[n + 1];
+		totalWeight = 0;
+		this.isDirected = isDirected;
+
+		sink.begin(n, isDirected);
+
+		//(1) Create initial graph (fully connected)
+		for(int i=0; i<m0; i++){
+			for(int j=i+1; j<m0; j++){
+				emit(sink, i, j);
+				if(isDirected) emit(sink, j, i);
+			}//end for
+		}//end for
+
+		//(2) Add remaining vertices, each with k edges
+		int[] chosen = new int[k];
+		int[] chosenIn = new int[k];
+		for(int i=m0; i<n; i++){
+			//impossible to add k edges if k is bigger than
+			//number of vertices - 1 in the graph
+			int temp = Math.min(k, i);
+
+			for(int added=0; added<temp; added++){
+				int j = pick(i, chosen, added);
+				chosen[added] = j;
+				emit(sink, i, j);
+
+				if(isDirected){
+					int h = pick(i, chosenIn, added);
+					chosenIn[added] = h;
+					emit(sink, h, i);
+				}//end if
+			}//end for
+		}//end for
+
+		sink.end();
+		weights = null;
+	}//end generate()
+
+	/**
+	 * Chooses an existing vertex other than i, and not already in
+	 * chosen[0..count), by preferential attachment.
+	 */
+	private int pick(int i, int[] chosen, int count){
+		for(int attempt=0; attempt<MAX_ATTEMPTS && totalWeight > 0; attempt++){
+			int j = sample();
+			if(j != i && !contains(chosen, count, j))
+				return j;
+		}//end for
+
+		//fall back to a uniform choice among the remaining vertices
+		int j = rand.nextInt(i);
+		while(contains(chosen, count, j))
+			j = rand.nextInt(i);
+		return j;
+	}//end pick()
+
+	/* Vertex chosen with probability weight / sum of weights, by
+	 * descending the Fenwick tree */
+	private int sample(){
+		int n = weights.length - 1;
+		long r = nextLong(totalWeight);
+		int pos = 0;
+		for(int step = Integer.highestOneBit(n); step > 0; step >>= 1){
+			if(pos + step <= n && weights[pos + step] <= r){
+				pos += step;
+				r -= weights[pos];
+			}//end if
+		}//end for
+		return pos;
+	}//end sample()
+
+	private void addWeight(int v, long delta){
+		totalWeight += delta;
+		for(int i = v + 1; i < weights.length; i += i & -i)
+			weights[i] += delta;
+	}//end addWeight()
+
+	private void emit(EdgeSink sink, int from, int to) throws IOException {
+		addWeight(to, 1);
+		if(!isDirected) addWeight(from, 1);
+
+		sink.edge(from, to);
+	}//end emit()
+
+	private long nextLong(long bound){
+		return (long) (rand.nextDouble() * bound);
+	}//end nextLong()
+
+	private static boolean contains(int[] values, int count, int value){
+		for(int i=0; i<count; i++)
+			if(values[i] == value) return true;
+		return false;
+	}//end contains()
+}
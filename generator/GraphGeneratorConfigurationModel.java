@@ -0,0 +1,211 @@
+package graph.generator;
+
+import graph.Graph;
+import gui.EdgeType;
+import gui.JPanelCanvas;
+import gui.TabManager;
+
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Map.Entry;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import algorithms.DegreeDistribution;
+
+/**
+ *  This model is used to create random networks with a given
+ *  degree sequence (Molloy & Reed, 1995). Every vertex v is given
+ *  degree(v) stubs, the stubs are shuffled, and consecutive pairs
+ *  of stubs are joined to form edges. Generation takes O(n + m)
+ *  time, with one int held per stub.
+ *
+ *  Self loops are dropped. Multiple edges are emitted as they are;
+ *  GraphSink drops them, giving the erased configuration model, so
+ *  the degrees of high degree vertices may come out a little lower
+ *  than asked for.
+ *
+ *  The degree sequence can be taken from an existing graph through
+ *  DegreeDistribution, giving a randomised graph with the same
+ *  degree distribution, or drawn from a power law.
+ *
+ *  @author Kirsty Williams
+ */
+public class GraphGeneratorConfigurationModel extends DefaultGraphGenerator implements GraphGenerator {
+	public GraphGeneratorConfigurationModel() {
+		setName("ConfigurationModel");
+		setGraphLayout("GraphLayoutRandom");
+	}//end constructor
+
+	/**
+	 * This method sets up the gui component for
+	 * the model.
+	 */
+	public JComponent getGUI() {
+		guiControls.put("N", new JTextField("25", 5)); //number of vertices
+		guiControls.put("Gamma", new JTextField("2.5", 5)); //power law exponent
+		guiControls.put("Min degree", new JTextField("1", 5)); //smallest degree in the power law
+		guiControls.put("Copy current", new JCheckBox("Copy current", false)); //use the degrees of the current graph
+
+		JPanel panel = new JPanel(false);
+		panel.setPreferredSize(PREFERED_SIZE);
+		panel.setLayout(new GridLayout(0, 2));
+
+		for (Entry<String, JComponent> e : guiControls.entrySet()) {
+			panel.add(new JLabel(e.getKey()));
+			panel.add(e.getValue());
+		}//end for
+		return panel;
+	}//end getGUI()
+
+	/**
+	 * 	This method parses the input from the user. If "Copy
+	 *  current" is selected the degree distribution of the graph
+	 *  currently in G is used, otherwise a power law is sampled.
+	 *  @param G - the graph
+	 */
+	public void parseGUI(Graph G)
+	{
+		int n = 0; //number of vertices as input by user
+		double gamma = 0; //power law exponent as input by user
+		int minDegree = 0; //smallest degree as input by user
+		boolean copy = false; //copy the degrees of the current graph
+
+		for (Entry<String, JComponent> e : guiControls.entrySet()) {
+			if (e.getKey() == "N")
+				n = getInteger((JTextField) e.getValue());
+			else if (e.getKey() == "Gamma")
+				gamma = getDouble((JTextField) e.getValue());
+			else if (e.getKey() == "Min degree")
+				minDegree = getInteger((JTextField) e.getValue());
+			else if (e.getKey() == "Copy current")
+				copy = getBoolean((JCheckBox) e.getValue());
+		}//end for
+
+		JPanelCanvas canvas = TabManager.getActiveCanvas();
+		canvas.setEdgeType(EdgeType.UNDIRECTED);
+
+		long seed = System.nanoTime();
+		int[] degrees;
+		if (copy && G.getNumVertices() > 0)
+			degrees = degreeSequence(new DegreeDistribution(G).getDistribution());
+		else
+			degrees = powerLawSequence(n, gamma, minDegree, seed);
+
+		generate(G, degrees, seed);
+	}//end parseGUI()
+
+	/**
+	 * Generates the graph into G.
+	 * @see #generate(EdgeSink, int[], long)
+	 */
+	public void generate(Graph G, int[] degrees, long seed) {
+		try {
+			generate(new GraphSink(G), degrees, seed);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); //GraphSink does no I/O
+		}//end try
+	}//end generate()
+
+	/**
+	 * This method generates an undirected graph in which vertex v
+	 * has degrees[v] edges. If the degrees sum to an odd number the
+	 * last stub is left unpaired.
+	 * @param sink - receives the generated edges
+	 * @param degrees - the target degree of each vertex
+	 * @param seed - seed for the random number generator
+	 */
+	public void generate(EdgeSink sink, int[] degrees, long seed) throws IOException {
+		long total = 0;
+		for (int v = 0; v < degrees.length; v++) {
+			if (degrees[v] < 0)
+				throw new IllegalArgumentException("Degree of vertex " + v + " is negative: " + degrees[v]);
+			total += degrees[v];
+		}//end for
+		if (total > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Degree sequence has too many stubs: " + total);
+
+		//(1) One stub per unit of degree
+		int[] stubs = new int[(int) total];
+		int s = 0;
+		for (int v = 0; v < degrees.length; v++) {
+			for (int d = 0; d < degrees[v]; d++)
+				stubs[s++] = v;
+		}//end for
+
+		//(2) Fisher-Yates shuffle
+		Random rand = new Random(seed);
+		for (int i = stubs.length - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			int tmp = stubs[i];
+			stubs[i] = stubs[j];
+			stubs[j] = tmp;
+		}//end for
+
+		//(3) Join consecutive stubs
+		sink.begin(degrees.length, false);
+		for (int i = 0; i + 1 < stubs.length; i += 2) {
+			if (stubs[i] != stubs[i + 1])
+				sink.edge(stubs[i], stubs[i + 1]);
+		}//end for
+		sink.end();
+	}//end generate()
+
+	/**
+	 * Expands a degree distribution, the number of vertices of each
+	 * degree as returned by DegreeDistribution.getDistribution(), into
+	 * a degree sequence with one entry per vertex.
+	 * @param distribution - number of vertices, indexed by degree
+	 * @return the degree of each vertex
+	 */
+	public static int[] degreeSequence(int[] distribution) {
+		int n = 0;
+		for (int count : distribution)
+			n += count;
+
+		int[] degrees = new int[n];
+		int v = 0;
+		for (int d = 0; d < distribution.length; d++) {
+			for (int i = 0; i < distribution[d]; i++)
+				degrees[v++] = d;
+		}//end for
+		return degrees;
+	}//end degreeSequence()
+
+	/**
+	 * Draws a degree sequence of n vertices from a discrete power law
+	 * P(k) ~ k^-gamma, k >= minDegree, by inverse transform sampling.
+	 * Degrees are capped at n - 1.
+	 * @param n - the number of vertices
+	 * @param gamma - the exponent, greater than 1
+	 * @param minDegree - the smallest degree
+	 * @param seed - seed for the random number generator
+	 * @return the degree of each vertex
+	 */
+	public static int[] powerLawSequence(int n, double gamma, int minDegree, long seed) {
+		if (gamma <= 1)
+			throw new IllegalArgumentException("Power law exponent " + gamma + " must be greater than 1");
+		if (minDegree < 0 || (n > 0 && minDegree > n - 1))
+			throw new IllegalArgumentException("Min degree outside of range [0, " + (n-1) + "]");
+
+		Random rand = new Random(seed);
+		double exponent = -1.0 / (gamma - 1);
+		double kMin = Math.max(minDegree, 0.5); //continuous approximation needs kMin > 0
+
+		int[] degrees = new int[n];
+		for (int v = 0; v < n; v++) {
+			double k = kMin * Math.pow(1 - rand.nextDouble(), exponent);
+			degrees[v] = (int) Math.min(n - 1, Math.max(minDegree, Math.floor(k)));
+		}//end for
+		return degrees;
+	}//end powerLawSequence()
+
+	@Override
+	public void parseCMD(Graph G, int x, int y, String[] args) {
+	}
+}
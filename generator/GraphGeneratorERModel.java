@@ -0,0 +1,150 @@
+package graph.generator;
+
+import graph.Graph;
+import gui.EdgeType;
+import gui.JPanelCanvas;
+import gui.TabManager;
+
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Map.Entry;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+/**
+ *  This model is used to create Erdos & Renyi (1959) random
+ *  networks G(n, p), in which every pair of vertices is
+ *  connected independently with probability p.
+ *
+ *  Rather than flipping a coin for each of the n^2 pairs, the
+ *  gap to the next edge is drawn from a geometric distribution
+ *  (Batagelj & Brandes, 2005), so generation takes O(n + m) time.
+ *
+ *  Rows are generated in blocks of BLOCK_ROWS vertices, each block
+ *  with its own random number generator, so blocks are independent
+ *  of each other and can be generated in any order or in parallel.
+ *
+ *  @author Kirsty Williams
+ */
+public class GraphGeneratorERModel extends DefaultGraphGenerator implements GraphGenerator {
+	public static final int BLOCK_ROWS = 1 << 12;
+
+	public GraphGeneratorERModel() {
+		setName("ERModel");
+		setGraphLayout("GraphLayoutRandom");
+	}//end constructor
+
+	/**
+	 * This method sets up the gui component for
+	 * the model.
+	 */
+	public JComponent getGUI() {
+		guiControls.put("N", new JTextField("25", 5)); //number of vertices
+		guiControls.put("P", new JTextField("0.1", 5)); //edge probability
+		guiControls.put("Directed", new JCheckBox("Directed", true));
+
+		JPanel panel = new JPanel(false);
+		panel.setPreferredSize(PREFERED_SIZE);
+		panel.setLayout(new GridLayout(0, 2));
+
+		for (Entry<String, JComponent> e : guiControls.entrySet()) {
+			panel.add(new JLabel(e.getKey()));
+			panel.add(e.getValue());
+		}//end for
+		return panel;
+	}//end getGUI()
+
+	/**
+	 * 	This method parses the input from the user.
+	 *  @param G - the graph
+	 */
+	public void parseGUI(Graph G)
+	{
+		int n = 0; //number of vertices as input by user
+		double p = 0; //edge probability as input by user
+		boolean isDirected = false; //generate a directed graph or not
+
+		for (Entry<String, JComponent> e : guiControls.entrySet()) {
+			if (e.getKey() == "N")
+				n = getInteger((JTextField) e.getValue());
+			else if (e.getKey() == "P")
+				p = getDouble((JTextField) e.getValue());
+			else if (e.getKey() == "Directed")
+				isDirected = getBoolean((JCheckBox) e.getValue());
+		}//end for
+
+		JPanelCanvas canvas = TabManager.getActiveCanvas();
+		canvas.setEdgeType(isDirected ? EdgeType.DIRECTED : EdgeType.UNDIRECTED);
+
+		generate(G, n, p, isDirected, System.nanoTime());
+	}//end parseGUI()
+
+	/**
+	 * Generates the graph into G.
+	 * @see #generate(EdgeSink, int, double, boolean, long)
+	 */
+	public void generate(Graph G, int n, double p, boolean isDirected, long seed) {
+		try {
+			generate(new GraphSink(G), n, p, isDirected, seed);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); //GraphSink does no I/O
+		}//end try
+	}//end generate()
+
+	/**
+	 * This method generates a G(n, p) graph. In the undirected case
+	 * vertex v is connected to each w < v with probability p, and
+	 * edges are emitted grouped by v in increasing order. In the
+	 * directed case each ordered pair (v, w), w != v, is considered.
+	 * @param sink - receives the generated edges
+	 * @param n - the number of vertices
+	 * @param p - the probability that any pair is connected
+	 * @param isDirected - whether the generated graph is directed
+	 * @param seed - seed for the random number generators
+	 */
+	public void generate(EdgeSink sink, int n, double p, boolean isDirected, long seed) throws IOException {
+		if (n < 0)
+			throw new IllegalArgumentException("Number of vertices " + n + " must not be negative");
+		if (p < 0 || p > 1)
+			throw new IllegalArgumentException("Invalid edge probability = " + p + " (should be between 0 and 1)");
+
+		sink.begin(n, isDirected);
+
+		if (p > 0) {
+			double logq = Math.log(1 - p); //-infinity when p == 1, giving no gaps
+
+			for (int start = 0; start < n; start += BLOCK_ROWS) {
+				Random rand = GraphGeneratorRMATModel.blockRandom(seed, start / BLOCK_ROWS);
+				int end = Math.min(n, start + BLOCK_ROWS);
+
+				for (int v = start; v < end; v++) {
+					int columns = isDirected ? n - 1 : v; //candidate neighbours of v
+					long w = -1;
+					while (true) {
+						//skip over the pairs that are not connected
+						double skip = Math.floor(Math.log(1 - rand.nextDouble()) / logq);
+						if (w + 1 + skip >= columns)
+							break;
+						w += 1 + (long) skip;
+
+						//in the directed case column v is skipped
+						int u = (int) w;
+						if (isDirected && u >= v) u++;
+						sink.edge(v, u);
+					}//end while
+				}//end for
+			}//end for
+		}//end if
+
+		sink.end();
+	}//end generate()
+
+	@Override
+	public void parseCMD(Graph G, int x, int y, String[] args) {
+	}
+}
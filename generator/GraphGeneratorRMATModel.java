@@ -0,0 +1,196 @@
+package graph.generator;
+
+import graph.Graph;
+import gui.EdgeType;
+import gui.JPanelCanvas;
+import gui.TabManager;
+
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Map.Entry;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+/**
+ *  This model is used to create random networks with the skewed,
+ *  heavy tailed degree distributions and community structure seen
+ *  in real networks, using the recursive matrix (R-MAT) model of
+ *  Chakrabarti, Zhan & Faloutsos (2004), a special case of the
+ *  Kronecker graph model.
+ *
+ *  Each edge is placed by recursively choosing one of the four
+ *  quadrants of the adjacency matrix with probabilities a, b, c
+ *  and d = 1 - (a + b + c), so generating m edges on 2^scale
+ *  vertices takes O(m * scale) time and no memory beyond the sink.
+ *
+ *  Edges are generated in blocks of BLOCK_SIZE, each with its own
+ *  random number generator seeded from the seed and the block
+ *  number, so blocks are independent of each other and the output
+ *  for a given seed does not depend on how blocks are scheduled.
+ *
+ *  @author Kirsty Williams
+ */
+public class GraphGeneratorRMATModel extends DefaultGraphGenerator implements GraphGenerator {
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	public GraphGeneratorRMATModel() {
+		setName("RMATModel");
+		setGraphLayout("GraphLayoutRandom");
+	}//end constructor
+
+	/**
+	 * This method sets up the gui component for
+	 * the model.
+	 */
+	public JComponent getGUI() {
+		guiControls.put("N", new JTextField("32", 5)); //number of vertices
+		guiControls.put("M", new JTextField("128", 5)); //number of edges
+		guiControls.put("A", new JTextField("0.57", 5)); //probability of the top left quadrant
+		guiControls.put("B", new JTextField("0.19", 5)); //probability of the top right quadrant
+		guiControls.put("C", new JTextField("0.19", 5)); //probability of the bottom left quadrant
+		guiControls.put("Directed", new JCheckBox("Directed", true));
+
+		JPanel panel = new JPanel(false);
+		panel.setPreferredSize(PREFERED_SIZE);
+		panel.setLayout(new GridLayout(0, 2));
+
+		for (Entry<String, JComponent> e : guiControls.entrySet()) {
+			panel.add(new JLabel(e.getKey()));
+			panel.add(e.getValue());
+		}//end for
+		return panel;
+	}//end getGUI()
+
+	/**
+	 * 	This method parses the input from the user.
+	 *  @param G - the graph
+	 */
+	public void parseGUI(Graph G)
+	{
+		int n = 0; //number of vertices as input by user
+		long m = 0; //number of edges as input by user
+		double a = 0, b = 0, c = 0; //quadrant probabilities as input by user
+		boolean isDirected = false; //generate a directed graph or not
+
+		for (Entry<String, JComponent> e : guiControls.entrySet()) {
+			if (e.getKey() == "N")
+				n = getInteger((JTextField) e.getValue());
+			else if (e.getKey() == "M")
+				m = getInteger((JTextField) e.getValue());
+			else if (e.getKey() == "A")
+				a = getDouble((JTextField) e.getValue());
+			else if (e.getKey() == "B")
+				b = getDouble((JTextField) e.getValue());
+			else if (e.getKey() == "C")
+				c = getDouble((JTextField) e.getValue());
+			else if (e.getKey() == "Directed")
+				isDirected = getBoolean((JCheckBox) e.getValue());
+		}//end for
+
+		JPanelCanvas canvas = TabManager.getActiveCanvas();
+		canvas.setEdgeType(isDirected ? EdgeType.DIRECTED : EdgeType.UNDIRECTED);
+
+		generate(G, n, m, a, b, c, isDirected, System.nanoTime());
+	}//end parseGUI()
+
+	/**
+	 * Generates the graph into G. Duplicate edges and self
+	 * loops are dropped, so G may have fewer than m edges.
+	 * @see #generate(EdgeSink, int, long, double, double, double, boolean, long)
+	 */
+	public void generate(Graph G, int n, long m, double a, double b, double c, boolean isDirected, long seed) {
+		try {
+			generate(new GraphSink(G), n, m, a, b, c, isDirected, seed);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); //GraphSink does no I/O
+		}//end try
+	}//end generate()
+
+	/**
+	 * This method generates m edges on n vertices according to the
+	 * R-MAT model. The adjacency matrix is padded to the next power
+	 * of two, and edges falling outside the n * n corner, or onto
+	 * the diagonal, are redrawn.
+	 * @param sink - receives the generated edges
+	 * @param n - the number of vertices
+	 * @param m - the number of edges
+	 * @param a - probability of recursing into the top left quadrant
+	 * @param b - probability of recursing into the top right quadrant
+	 * @param c - probability of recursing into the bottom left quadrant;
+	 * b + c must be positive, or every edge would be a self loop
+	 * @param isDirected - whether the generated graph is directed
+	 * @param seed - seed for the random number generators
+	 */
+	public void generate(EdgeSink sink, int n, long m, double a, double b, double c, boolean isDirected, long seed) throws IOException {
+		if (n <= 1)
+			throw new IllegalArgumentException("Number of vertices " + n + " must be greater than 1");
+		if (m < 0)
+			throw new IllegalArgumentException("Number of edges " + m + " must not be negative");
+		if (a < 0 || b < 0 || c < 0 || a + b + c > 1)
+			throw new IllegalArgumentException("Invalid quadrant probabilities a = " + a +
+					", b = " + b + ", c = " + c + " (should be non-negative and sum to at most 1)");
+		if (b + c <= 0)
+			throw new IllegalArgumentException("Quadrant probabilities b = " + b + " and c = " + c +
+					" leave every edge on the diagonal (b + c must be positive)");
+
+		int scale = 32 - Integer.numberOfLeadingZeros(n - 1); //smallest power of two >= n
+		double ab = a + b;
+		double abc = a + b + c;
+
+		sink.begin(n, isDirected);
+
+		long blocks = (m + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		for (long block = 0; block < blocks; block++) {
+			Random rand = blockRandom(seed, block);
+			long count = Math.min(BLOCK_SIZE, m - block * BLOCK_SIZE);
+
+			for (long e = 0; e < count; e++) {
+				int from, to;
+				do {
+					from = 0;
+					to = 0;
+					for (int level = 0; level < scale; level++) {
+						double r = rand.nextDouble();
+						from <<= 1;
+						to <<= 1;
+						if (r < a) {
+							//top left, nothing to set
+						} else if (r < ab) {
+							to |= 1;
+						} else if (r < abc) {
+							from |= 1;
+						} else {
+							from |= 1;
+							to |= 1;
+						}//end if
+					}//end for
+				} while (from >= n || to >= n || from == to);
+
+				sink.edge(from, to);
+			}//end for
+		}//end for
+
+		sink.end();
+	}//end generate()
+
+	/**
+	 * Returns an independent random number generator for the given
+	 * block, so that blocks can be generated in any order, or in
+	 * parallel, and give the same graph.
+	 */
+	static Random blockRandom(long seed, long block) {
+		long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new Random(z ^ (z >>> 31));
+	}//end blockRandom()
+
+	@Override
+	public void parseCMD(Graph G, int x, int y, String[] args) {
+	}
+}
@@ -0,0 +1,112 @@
+package graph.generator;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ *	Streaming variant of GraphGeneratorWSModel. The ring lattice is
+ *	never built; instead each lattice edge (i, i+j) is either emitted
+ *	as it is, or rewired to a random vertex, as the lattice is walked.
+ *	Memory use is independent of the size of the graph.
+ *
+ *	A rewired edge never duplicates a lattice edge of i, nor another
+ *	edge of i, but because nothing is remembered between vertices it
+ *	may occasionally duplicate an edge rewired earlier from the other
+ *	end. GraphSink drops such duplicates; file sinks keep them.
+ *
+ *	The undirected stream emits edges grouped by source vertex in
+ *	increasing order, so it can be written with a CSRSink.
+ *
+ *  @author Kirsty Williams
+ **/
+public class GraphGeneratorWSModelStream {
+	private static final double R = 0.5; //Likelihood that any two vertices are connected in both directions
+
+	/**
+	 * Generates a Watts & Strogatz (1998) graph into the sink with a
+	 * random seed.
+	 * @see #generate(EdgeSink, int, int, double, boolean, long)
+	 */
+	public void generate(EdgeSink sink, int n, int k, double p, boolean isDirected) throws IOException {
+		generate(sink, n, k, p, isDirected, System.nanoTime());
+	}//end generate()
+
+	/**
+	 * Generates a Watts & Strogatz (1998) graph into the sink. The
+	 * parameters have the same meaning as in GraphGeneratorWSModel.
+	 * @param sink - receives the generated edges
+	 * @param n - the number of vertices
+	 * @param k - the number of edges connected to each
+	 * vertex in the initial graph
+	 * @param p - the probability that an edge will be
+	 * rewired
+	 * @param isDirected - whether the generated graph
+	 * is a directed graph or not
+	 * @param seed - seed for the random number generator
+	 */
+	public void generate(EdgeSink sink, int n, int k, double p, boolean isDirected, long seed) throws IOException {
+		Random rand = new Random(seed);
+
+		//Make sure k is feasible
+		if (k % 2 != 0) {
+			System.out.println("K (degree) must be an even integer: changing from " + k + " to " + (k-1));
+			k = k-1;
+		}//end if
+		if (k < 0 || k > n-1)
+			throw new IllegalArgumentException("K (degree) outside of range [0, " + (n-1) + "]");
+		//Make sure p is feasible
+		if (p < 0 || p > 1)
+			throw new IllegalArgumentException("Invalid rewiring parameter = " + p + " (should be between 0 and 1)");
+
+		int half = k / 2;
+		int[] chosen = new int[half]; //targets already given to vertex i
+		boolean canRewire = n - 1 - k >= half; //enough vertices outside the lattice neighbourhood
+
+		sink.begin(n, isDirected);
+
+		for(int i=0; i<n; i++){
+			for(int j=1; j<=half; j++){
+				int t = (i+j)%n;
+
+				if(canRewire && p > rand.nextDouble()){
+					int h = rand.nextInt(n);
+					while(h == i || isLatticeNeighbour(i, h, n, half) || contains(chosen, j-1, h))
+						h = rand.nextInt(n);
+					t = h;
+
+					if(!isDirected){
+						sink.edge(i, h);
+					}else if(R > rand.nextDouble()){
+						sink.edge(i, h);
+						sink.edge(h, i);
+					}else{
+						//out edge to h, and an in edge from another random vertex l
+						sink.edge(i, h);
+						int l = rand.nextInt(n);
+						while(l == i)
+							l = rand.nextInt(n);
+						sink.edge(l, i);
+					}//end if
+				}else{
+					sink.edge(i, t);
+					if(isDirected) sink.edge(t, i);
+				}//end if
+				chosen[j-1] = t;
+			}//end for
+		}//end for
+
+		sink.end();
+	}//end generate()
+
+	/* Whether h is within k/2 steps of i around the ring */
+	private static boolean isLatticeNeighbour(int i, int h, int n, int half){
+		int d = Math.abs(i - h);
+		return Math.min(d, n - d) <= half;
+	}//end isLatticeNeighbour()
+
+	private static boolean contains(int[] values, int count, int value){
+		for(int i=0; i<count; i++)
+			if(values[i] == value) return true;
+		return false;
+	}//end contains()
+}
@@ -0,0 +1,49 @@
+package graph.generator;
+
+import graph.Edge;
+import graph.Graph;
+import graph.Vertex;
+
+/**
+ * Builds the generated edges into an in-memory Graph, for graphs
+ * small enough to fit on the heap. Edges that already exist in the
+ * graph are skipped.
+ * 
+ * @author Kirsty Williams
+ */
+public class GraphSink implements EdgeSink {
+	private final Graph G;
+	private Vertex[] vArray;
+	private boolean isDirected;
+	
+	public GraphSink(Graph G) {
+		this.G = G;
+	}//end constructor
+	
+	public void begin(int numVertices, boolean isDirected) {
+		this.isDirected = isDirected;
+		G.empty();
+		G.ensureCapacity(numVertices, numVertices);
+		vArray = new Vertex[numVertices];
+		for (int i = 0; i < numVertices; i++)
+			vArray[i] = G.createVertex(0);
+	}//end begin()
+	
+	public void edge(int from, int to) {
+		if (from == to)
+			return;
+		
+		Edge e = vArray[from].getEdge(vArray[to]);
+		if (e != null && (!isDirected || e.getVertexTo() == vArray[to]))
+			return;
+		
+		if (isDirected)
+			G.createDirectedEdge(vArray[from], vArray[to]);
+		else
+			G.createEdge(vArray[from], vArray[to]);
+	}//end edge()
+	
+	public void end() {
+		vArray = null;
+	}//end end()
+}
@@ -0,0 +1,399 @@
+package graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.THashSet;
+import graph.Edge;
+import graph.Vertex;
+import utils.BreadthFirstSearch;
+import utils.FlatQuadTree;
+
+/**
+ * Layout for a graph that changes a little between calls.
+ * <p>
+ * The first call lays out the whole graph with GraphLayoutMultilevel.
+ * After that, each call handles the edits made since the previous one:
+ * each new vertex is placed at the barycentre of its neighbours that
+ * already have a place, with a little jitter, and only the vertices
+ * within HOPS steps of a new vertex, of either end of a new or removed
+ * edge, or of a neighbour of a removed vertex are moved, by the
+ * Barnes-Hut forces of GraphLayoutKirsty that the full layout is
+ * refined with. Every other vertex is pinned: it still pushes and pulls
+ * the moving ones, but stays where it is.
+ * <p>
+ * The layout keeps its own index of the vertices, their positions and
+ * a Barnes-Hut tree of them between calls. An edit takes the moving
+ * vertices out of the tree and puts them back when they have settled,
+ * and copies only them and their neighbours into a small LayoutGraph,
+ * so it costs time in the size of that neighbourhood, and an iteration
+ * two tree walks per moving vertex, whatever the size of the graph. If
+ * more than a FULL_LAYOUT fraction of the vertices is new, the whole
+ * graph is laid out again instead.
+ * <p>
+ * Edits are best reported as they are made, through vertexAdded(),
+ * vertexRemoved(), edgeAdded(), edgeRemoved() and vertexMoved(). If
+ * none has been reported since the previous call, updateLayout() finds
+ * them itself by comparing V and E with what it laid out last, which
+ * costs a pass over both.
+ *
+ * @author Kirsty Williams
+ */
+public class GraphLayoutIncremental extends DefaultGraphLayout implements
+		GraphLayout {
+
+	private static final int HOPS = 2; // depth of the neighbourhood that is moved
+	private static final int ITERATIONS = 200; // at most, per edit
+	private static final double FULL_LAYOUT = 0.5;
+	private static final double JITTER = 10;
+	private static final double SPACER = 5;
+
+	private final GraphLayoutMultilevel full = new GraphLayoutMultilevel();
+	private final GraphLayoutKirsty local = new GraphLayoutKirsty();
+	private final BreadthFirstSearch bfs = new BreadthFirstSearch();
+
+	// the vertices laid out so far, by slot, and where they were put
+	private final TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(16, 0.5f, -1);
+	private Vertex[] vertices = new Vertex[16];
+	private double[] x = new double[16];
+	private double[] y = new double[16];
+	private int numVertices;
+	private FlatQuadTree tree; // every slot at its position, with the slot as id
+	private THashSet<Edge> placedEdges = new THashSet<Edge>();
+
+	// edits since the previous call
+	private final List<Vertex> added = new ArrayList<Vertex>();
+	private final THashSet<Vertex> seeds = new THashSet<Vertex>();
+	private boolean reported;
+
+	public GraphLayoutIncremental() {
+		setName("Incremental");
+	}
+
+	/**
+	 * Forgets the previous layout, so that the next call lays out the
+	 * whole graph.
+	 */
+	public final void restart() {
+		index.clear();
+		Arrays.fill(vertices, 0, numVertices, null);
+		numVertices = 0;
+		tree = null;
+		placedEdges = new THashSet<Edge>();
+		added.clear();
+		seeds.clear();
+		reported = false;
+	}
+
+	/**
+	 * Reports a vertex added to the graph since the previous call.
+	 */
+	public final void vertexAdded(final Vertex v) {
+		added.add(v);
+		seeds.add(v);
+		reported = true;
+	}
+
+	/**
+	 * Reports a vertex removed from the graph since the previous call.
+	 * Its neighbours are moved on the next call if it still has any
+	 * when reported; otherwise report its edges as removed as well.
+	 */
+	public final void vertexRemoved(final Vertex v) {
+		reported = true;
+		seeds.remove(v);
+		final int slot = index.get(v);
+		if (slot < 0) {
+			added.remove(v);
+			return;
+		}//end if
+
+		for (Vertex u : v.getNeighbours())
+			seeds.add(u);
+		seeds.remove(v);
+		removeSlot(slot);
+	}
+
+	/**
+	 * Reports an edge added to the graph since the previous call.
+	 */
+	public final void edgeAdded(final Edge e) {
+		placedEdges.add(e);
+		seeds.add(e.getVertexFrom());
+		seeds.add(e.getVertexTo());
+		reported = true;
+	}
+
+	/**
+	 * Reports an edge removed from the graph since the previous call.
+	 */
+	public final void edgeRemoved(final Edge e) {
+		placedEdges.remove(e);
+		seeds.add(e.getVertexFrom());
+		seeds.add(e.getVertexTo());
+		reported = true;
+	}
+
+	/**
+	 * Reports a vertex moved by something other than this layout, such
+	 * as a drag, so that the layout works from where it is now. It is
+	 * not an edit: nothing around it is moved.
+	 */
+	public final void vertexMoved(final Vertex v) {
+		final int slot = index.get(v);
+		if (slot < 0)
+			return;
+
+		tree.remove(x[slot], y[slot], slot);
+		x[slot] = v.getX();
+		y[slot] = v.getY();
+		tree.put(x[slot], y[slot], slot);
+		reported = true;
+	}
+
+	public final void updateLayout() {
+		if (!reported)
+			findEdits();
+		reported = false;
+
+		int count = 0;
+		for (Vertex v : added) {
+			if (index.get(v) < 0)
+				count++;
+		}//end for
+
+		if (numVertices == 0 || count > FULL_LAYOUT * V.size()) {
+			layoutAll();
+		} else if (!seeds.isEmpty()) {
+			final int first = numVertices;
+			for (Vertex v : added) {
+				if (index.get(v) < 0 && V.contains(v))
+					addSlot(v, v.getX(), v.getY());
+			}//end for
+
+			place(first);
+			relax(first);
+		}//end if
+
+		added.clear();
+		seeds.clear();
+	}
+
+	/*
+	 * Compares V and E with the vertices and edges laid out so far, and
+	 * reports the differences as edits.
+	 */
+	private void findEdits() {
+		for (Vertex v : V) {
+			final int slot = index.get(v);
+			if (slot < 0)
+				vertexAdded(v);
+			else if (x[slot] != v.getX() || y[slot] != v.getY())
+				vertexMoved(v);
+		}//end for
+
+		// from the top down, as a removal moves the last slot into its own
+		if (numVertices + added.size() > V.size()) {
+			for (int i = numVertices - 1; i >= 0; i--) {
+				if (!V.contains(vertices[i]))
+					vertexRemoved(vertices[i]);
+			}//end for
+		}//end if
+
+		for (Edge e : E) {
+			if (!placedEdges.contains(e))
+				edgeAdded(e);
+		}//end for
+		if (placedEdges.size() > E.size()) {
+			final List<Edge> removed = new ArrayList<Edge>();
+			for (Edge e : placedEdges) {
+				if (!E.contains(e))
+					removed.add(e);
+			}//end for
+			for (Edge e : removed)
+				edgeRemoved(e);
+		}//end if
+	}
+
+	/* Lays out the whole graph and starts the index again from it */
+	private void layoutAll() {
+		final LayoutGraph graph = new LayoutGraph(V, E);
+		full.layout(graph);
+		graph.store();
+
+		index.clear();
+		Arrays.fill(vertices, 0, numVertices, null);
+		numVertices = 0;
+		for (int i = 0; i < graph.getNumVertices(); i++)
+			addSlot(graph.vertices[i], graph.x[i], graph.y[i]);
+		fillTree();
+		placedEdges = new THashSet<Edge>(E);
+	}
+
+	/* Puts every slot in a new tree, leaving behind what was removed */
+	private void fillTree() {
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < numVertices; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}//end for
+
+		tree = new FlatQuadTree(minX - SPACER, minY - SPACER, maxX + SPACER, maxY + SPACER,
+				numVertices, 1, FlatQuadTree.MAX_DEPTH);
+		for (int i = 0; i < numVertices; i++)
+			tree.put(x[i], y[i], i);
+	}
+
+	/* Gives v the next slot, at (px,py); it is not put in the tree */
+	private void addSlot(final Vertex v, final double px, final double py) {
+		if (numVertices == vertices.length) {
+			vertices = Arrays.copyOf(vertices, numVertices * 2);
+			x = Arrays.copyOf(x, numVertices * 2);
+			y = Arrays.copyOf(y, numVertices * 2);
+		}//end if
+		vertices[numVertices] = v;
+		x[numVertices] = px;
+		y[numVertices] = py;
+		index.put(v, numVertices++);
+	}
+
+	/* Frees the slot, moving the last slot into it */
+	private void removeSlot(final int slot) {
+		final int last = --numVertices;
+		tree.remove(x[slot], y[slot], slot);
+		index.remove(vertices[slot]);
+		if (slot != last) {
+			tree.remove(x[last], y[last], last);
+			vertices[slot] = vertices[last];
+			x[slot] = x[last];
+			y[slot] = y[last];
+			index.put(vertices[slot], slot);
+			tree.put(x[slot], y[slot], slot);
+		}//end if
+		vertices[last] = null;
+
+		if (tree.getNumRemoved() > numVertices)
+			fillTree();
+	}
+
+	/**
+	 * Places each new vertex, the slots from first on, at the barycentre
+	 * of its neighbours that have a place. Vertices next to other new
+	 * vertices are placed in later rounds, once those have been; a new
+	 * vertex with no path to a placed one stays where it is.
+	 */
+	private void place(final int first) {
+		final boolean[] done = new boolean[numVertices - first];
+		int remaining = done.length;
+		boolean progress = true;
+		while (progress && remaining > 0) {
+			progress = false;
+			for (int s = first; s < numVertices; s++) {
+				if (done[s - first])
+					continue;
+
+				double px = 0, py = 0;
+				int count = 0;
+				for (Vertex u : vertices[s].getNeighbours()) {
+					final int t = index.get(u);
+					if (t >= 0 && (t < first || done[t - first])) {
+						px += x[t];
+						py += y[t];
+						count++;
+					}//end if
+				}//end for
+				if (count == 0)
+					continue;
+
+				x[s] = px / count + LayoutGraph.jitter(-1, s, 0) * JITTER;
+				y[s] = py / count + LayoutGraph.jitter(-1, s, 1) * JITTER;
+				done[s - first] = true;
+				remaining--;
+				progress = true;
+			}//end for
+		}//end while
+	}
+
+	/**
+	 * Runs the Barnes-Hut forces on the vertices within HOPS of a seed,
+	 * with every other vertex pinned. The slots from first on are new
+	 * and not in the tree yet.
+	 */
+	private void relax(final int first) {
+		final THashSet<Vertex> region = new THashSet<Vertex>();
+		for (int s = first; s < numVertices; s++)
+			region.add(vertices[s]);
+		for (Vertex s : seeds) {
+			if (index.get(s) < 0)
+				continue;
+			for (Vertex u : bfs.findAll(s, HOPS, 64)) {
+				if (index.get(u) >= 0)
+					region.add(u);
+			}//end for
+		}//end for
+
+		// the moving slots, in slot order so that the result does not
+		// depend on the order of the hash set
+		final int count = region.size();
+		final int[] free = new int[count];
+		int i = 0;
+		for (Vertex v : region)
+			free[i++] = index.get(v);
+		Arrays.sort(free);
+
+		// the moving vertices first, then their pinned neighbours
+		final TObjectIntHashMap<Vertex> ids = new TObjectIntHashMap<Vertex>(2 * count, 0.5f, -1);
+		final TIntArrayList slots = new TIntArrayList(2 * count);
+		for (i = 0; i < count; i++) {
+			ids.put(vertices[free[i]], i);
+			slots.add(free[i]);
+			if (free[i] < first)
+				tree.remove(x[free[i]], y[free[i]], free[i]);
+		}//end for
+
+		final TIntArrayList from = new TIntArrayList();
+		final TIntArrayList to = new TIntArrayList();
+		for (i = 0; i < count; i++) {
+			for (Vertex u : vertices[free[i]].getNeighbours()) {
+				final int t = index.get(u);
+				if (t < 0)
+					continue;
+				int j = ids.get(u);
+				if (j < 0) {
+					j = slots.size();
+					ids.put(u, j);
+					slots.add(t);
+				}//end if
+				from.add(i);
+				to.add(j);
+			}//end for
+		}//end for
+
+		final double[] lx = new double[slots.size()];
+		final double[] ly = new double[slots.size()];
+		for (i = 0; i < lx.length; i++) {
+			lx[i] = x[slots.get(i)];
+			ly[i] = y[slots.get(i)];
+		}//end for
+
+		final LayoutGraph graph = new LayoutGraph(lx, ly, from.toArray(), to.toArray(), from.size());
+		local.layout(graph, count, tree, ITERATIONS);
+
+		for (i = 0; i < count; i++) {
+			final int s = free[i];
+			x[s] = lx[i];
+			y[s] = ly[i];
+			vertices[s].setLocation(x[s], y[s]);
+			tree.put(x[s], y[s], s);
+		}//end for
+
+		if (tree.getNumRemoved() > numVertices)
+			fillTree();
+	}
+}
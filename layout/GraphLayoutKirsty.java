@@ -1,27 +1,43 @@
 package graph.layout;
 
-import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
-import java.util.List;
-
-import utils.QuadNode;
-import utils.QuadTree;
-import utils.Box;
-import gnu.trove.map.hash.THashMap;
-import graph.Graph;
-import graph.Vertex;
-import graph.vertex.DefaultVertex;
+import java.util.Arrays;
+
+import utils.FlatQuadTree;
 
 public class GraphLayoutKirsty extends DefaultGraphLayout implements
-		GraphLayout {
-	
+		GraphLayout, IterativeLayout {
+
 	private final int SPACER = 5;
 	private final double THETA = 1.1; //keep relatively close to one. Anything larger than 1.2 skews the layout
-	private final int ITERATIONS = 1000;
-	THashMap<Vertex, Point2D> old = new THashMap<Vertex, Point2D>();
-	List<Point2D> forces = new ArrayList<Point2D>();
-	
+	private final int ITERATIONS = 1000; //at most, the scheduler stops once the layout settles
+	private final double TOLERANCE = 0.01; //mean movement per vertex, as a fraction of K, that counts as settled
+	private final double K = 50; //natural spring length
+	private final double KSQ = K * K;
+
+	private LayoutGraph graph;
+	private double[] dispX;
+	private double[] dispY;
+	private FlatQuadTree tree;
+	private int leafCapacity = 1; //vertices a tree leaf holds before it is divided
+	private int[][] stacks = { new int[64] }; //one traversal stack per slice
+	private LayoutWorkers workers;
+	private final LayoutScheduler scheduler = new LayoutScheduler(ITERATIONS, TOLERANCE);
+	private LayoutScheduler active; //scheduler of the run between begin and finish
+
+	private final class Forces implements LayoutWorkers.Range {
+		private boolean attractPerVertex;
+
+		public final void run(final int from, final int to, final int slice) {
+			for(int v=from; v<to; v++){
+				repulse(tree, v, v, slice);
+				if(attractPerVertex)
+					attract(v);
+			}
+		}
+	}
+
+	private final Forces forces = new Forces();
+
 	/**
 	 * Constructor - only use this for aspects related to the class, not the
 	 * Graph The Graph will not exist when this is initialised
@@ -30,169 +46,319 @@ public class GraphLayoutKirsty extends DefaultGraphLayout implements
 		setName("Kirstys Spring");
 	}
 
+	/**
+	 * Sets the number of threads the forces are computed on. With more
+	 * than one, each thread walks the shared tree for its own slice of
+	 * the vertices, and sums the attraction over each vertex's edges in
+	 * a fixed order, so the result does not depend on thread scheduling.
+	 * The default is one.
+	 */
+	public final void setThreads(int threads){
+		if(workers != null)
+			workers.shutdown();
+		workers = threads > 1 ? new LayoutWorkers(threads) : null;
+		stacks = new int[Math.max(1, threads)][64];
+	}
+
+	/**
+	 * Sets how many vertices a leaf of the Barnes-Hut tree holds before
+	 * it is divided. Larger leaves mean fewer nodes to build and walk,
+	 * but every vertex of an opened leaf is summed exactly. The default
+	 * is one, which measured fastest on random graphs; larger values may
+	 * suit graphs whose vertices bunch closely together.
+	 */
+	public final void setLeafCapacity(int leafCapacity){
+		if(leafCapacity < 1)
+			throw new IllegalArgumentException("leafCapacity must be at least 1: " + leafCapacity);
+		this.leafCapacity = leafCapacity;
+		tree = null; //rebuilt with the new capacity
+	}
+
 	/** Implementation based on the Quigley, FADE algorithm.
 	 * Quadtree is used for space decomposition followed by
 	 * recursive force computation on vertices. A threshold
 	 * is defined by s/d < theta. Where, s is the width of
 	 * a quadrant in the tree, d is the distance between the
 	 * vertex being considered and the centre of mass of the
-	 * quadrant being looked at. */
-	public final void updateLayout() {	
-		
-		for(int i=0; i<ITERATIONS; i++){
-	        Rectangle2D bounds;
-	        bounds = Graph.getBounds(V);
-	        
-	    	QuadTree<Vertex> tree = new QuadTree<Vertex>(bounds.getMinX() - SPACER, bounds.getMinY() - SPACER, bounds.getMaxX() + SPACER, bounds.getMaxY() + SPACER);
-	    	//Add vertices to the quadtree
-	    	for(Vertex v : V){    		
-	    		tree.put(v.getX(), v.getY(), v);
-	    	}  	
-	    	
-	    	//Map each vertex with it's original location
-	    	for(Vertex v : V){
-	    		old.put(v, v.getLocation());
-	    	}
-	
-	    	//Calculate the centre of mass of each quadnode in the tree
-	    	calculateCOM(tree.root);
-	    	
-	    	//Compute force on each vertex
-			for(Vertex v : V){
-				double posX = 0;
-				double posY = 0;
-				forces = new ArrayList<Point2D>();
-				computeForce(v, tree.root, forces);
-				for(Point2D p : forces){
-					posX += p.getX();
-					posY += p.getY();
-				}
-	
-				//update the location of the vertex
-				v.setLocation(old.get(v).getX() + posX, old.get(v).getY() + posY);
-	    	}
-			//Clear the tree for next iteration
-			tree.clear();
+	 * quadrant being looked at.
+	 * <p>
+	 * Forces are those of Fruchterman & Reingold: a quadrant
+	 * far enough away repels the vertex by mass * k^2 / d from
+	 * its centre of mass, and each edge pulls its ends together
+	 * by d^2 / k. Positions and forces are held in primitive
+	 * arrays and only written back to the vertices at the end.
+	 * <p>
+	 * The step starts at k and adapts to the energy of the layout,
+	 * see LayoutScheduler, which also stops the iterations once the
+	 * vertices have settled. */
+	public final void updateLayout() {
+		LayoutGraph graph = new LayoutGraph(V, E);
+		layout(graph, scheduler, K);
+		graph.store();
+	}
+
+	/**
+	 * Scheduler of the last updateLayout(), for its per iteration energy.
+	 */
+	public final LayoutScheduler getScheduler(){
+		return scheduler;
+	}
+
+	/* Iterates on the positions held in the graph's arrays until the
+	 * scheduler stops, starting with the given step. Nothing is read
+	 * from or written to the vertices. */
+	final void layout(LayoutGraph graph, LayoutScheduler scheduler, double step){
+		begin(graph, scheduler, step);
+		while(step());
+		finish();
+	}
+
+	/**
+	 * Starts a run on the graph's positions with this layout's own
+	 * scheduler, to be driven one iteration at a time by step().
+	 */
+	public final void begin(LayoutGraph graph){
+		begin(graph, scheduler, K);
+	}
+
+	private void begin(LayoutGraph graph, LayoutScheduler scheduler, double step){
+		this.graph = graph;
+		this.active = scheduler;
+		final int n = graph.getNumVertices();
+		dispX = new double[n];
+		dispY = new double[n];
+		scheduler.begin(n, step);
+	}
+
+	public final boolean step(){
+		if(!active.isRunning())
+			return false;
+		final int n = graph.getNumVertices();
+
+    	//The tree is rebuilt in place, and keeps the centre of
+    	//mass of each node up to date as vertices are put
+    	buildTree();
+
+    	Arrays.fill(dispX, 0);
+    	Arrays.fill(dispY, 0);
+
+    	//Repulsion from the tree, attraction along the edges
+		if(workers == null){
+			forces.attractPerVertex = false;
+			forces.run(0, n, 0);
+			attract();
+		} else {
+			forces.attractPerVertex = true;
+			workers.run(n, forces);
 		}
+
+		//Move each vertex by at most the scheduler's step
+		move(active, n);
+		return active.isRunning();
+	}
+
+	public final void finish(){
+		this.graph = null;
+		this.active = null;
+		dispX = null;
+		dispY = null;
+	}
+
+	/* Moves the first count vertices of the graph for at most the given
+	 * number of iterations, while the rest of it keeps still; the rest
+	 * need only be the neighbours of the moving vertices. They are put
+	 * in a small tree of their own each iteration, and are also pushed
+	 * by pinned, a tree the caller keeps of every vertex that is not
+	 * moving, whose ids are the caller's and not vertices of graph. An
+	 * iteration costs two tree walks and the edges of each moving
+	 * vertex, and nothing per pinned vertex. */
+	final void layout(LayoutGraph graph, int count, FlatQuadTree pinned, int iterations){
+		this.graph = graph;
+		dispX = new double[count];
+		dispY = new double[count];
+
+		final FlatQuadTree free = new FlatQuadTree(0, 0, 0, 0, count, leafCapacity, FlatQuadTree.MAX_DEPTH);
+		final LayoutScheduler local = new LayoutScheduler(iterations, TOLERANCE);
+		local.begin(count, K);
+		while(local.isRunning()){
+			buildTree(free, count);
+			for(int v=0; v<count; v++){
+				dispX[v] = 0;
+				dispY[v] = 0;
+				repulse(pinned, v, -1, 0);
+				repulse(free, v, v, 0);
+				attract(v);
+			}
+			move(local, count);
+		}
+
+		finish();
 	}
-	
-	
-	/* Calculates the centre of mass of a quadrant */
-	private void calculateCOM(QuadNode<Vertex> parent){
-		double comX = 0; //centre of mass, x coord
-		double comY = 0; //centre of mass, y coord
-		
-		//values in the given quadrant
-		ArrayList<Vertex> values = new ArrayList<Vertex>();
-		values = parent.get(parent.getBounds(), values);
-		
-		if(values.size() == 1){
-			parent.setCOM(values.get(0).getX(), values.get(0).getY());
-		} else{
-			if(parent.NE != null)
-				calculateCOM(parent.NE);
-			if(parent.NW != null)
-				calculateCOM(parent.NW);
-			if(parent.SE != null)
-				calculateCOM(parent.SE);
-			if(parent.SW != null)
-				calculateCOM(parent.SW);
-		
-		    for(Vertex vert : values){
-		    	comX += vert.getX();
-		    	comY += vert.getY();
-		    }
-		    
-		    comX = comX / parent.getMass();
-		    comY = comY / parent.getMass();
-			parent.setCOM(comX, comY);;
+
+	/* Rebuilds the tree in place around the current positions */
+	private void buildTree(){
+		final double[] x = graph.x;
+		final double[] y = graph.y;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(int v=0; v<x.length; v++){
+			minX = Math.min(minX, x[v]);
+			minY = Math.min(minY, y[v]);
+			maxX = Math.max(maxX, x[v]);
+			maxY = Math.max(maxY, y[v]);
 		}
+
+		if(tree == null)
+			tree = new FlatQuadTree(minX - SPACER, minY - SPACER, maxX + SPACER, maxY + SPACER, x.length, leafCapacity, FlatQuadTree.MAX_DEPTH);
+		else
+			tree.reset(minX - SPACER, minY - SPACER, maxX + SPACER, maxY + SPACER);
+
+		//Add vertices to the quadtree
+		for(int v=0; v<x.length; v++)
+			tree.put(x[v], y[v], v);
 	}
-     
-	private void computeForce(Vertex v, QuadNode<Vertex> node, List<Point2D> f){
-		Box bounds = node.getBounds();
-    	ArrayList<Vertex> values = new ArrayList<Vertex>();
-    	values = node.get(bounds, values);
-
-		double vx = v.getX();
-		double vy = v.getY();
-		double dx = node.comX - vx;
-		double dy = node.comY - vy;
-		double d = Math.sqrt(dx*dx + dy*dy);
-		double s = bounds.maxX - bounds.minX;
-		
-		Graph sub = new Graph();
-		Vertex theVertex = new DefaultVertex(vx, vy, 1);
-		
-		if(!node.hasChildren && (values.size()>0)){
-			Vertex leafVertex = new DefaultVertex(values.get(0).getX(), values.get(0).getY(), 1);
-			//We're at a leaf node (containing a single vertex)
-			if(values.get(0) != v){
-				sub.addVertex(theVertex);
-				sub.addVertex(leafVertex);
-				if(v.isConnected(values.get(0))){
-					sub.createEdge(theVertex, leafVertex);
+
+	/* Rebuilds the given tree around the first count vertices */
+	private void buildTree(FlatQuadTree tree, int count){
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(int v=0; v<count; v++){
+			minX = Math.min(minX, graph.x[v]);
+			minY = Math.min(minY, graph.y[v]);
+			maxX = Math.max(maxX, graph.x[v]);
+			maxY = Math.max(maxY, graph.y[v]);
+		}
+
+		tree.reset(minX - SPACER, minY - SPACER, maxX + SPACER, maxY + SPACER);
+		for(int v=0; v<count; v++)
+			tree.put(graph.x[v], graph.y[v], v);
+	}
+
+	/* Accumulates the repulsion on vertex v from every other vertex in
+	 * the tree, walking it with an explicit stack; self is the id v has
+	 * in the tree, or -1 if it is not in it. A quadrant is treated as a
+	 * single body at its centre of mass when s/d < theta and v lies
+	 * outside it; leaves are always exact. */
+	private void repulse(FlatQuadTree tree, int v, int self, int slice){
+		final double vx = graph.x[v];
+		final double vy = graph.y[v];
+		double fx = 0;
+		double fy = 0;
+		int[] stack = stacks[slice];
+
+		int top = 0;
+		stack[top++] = tree.getRoot();
+		while(top > 0){
+			int node = stack[--top];
+			if(tree.getMass(node) == 0)
+				continue;
+
+			int child = tree.getChild(node);
+			if(child < 0){
+				for(int p = tree.getFirstPoint(node); p >= 0; p = tree.getNextPoint(p)){
+					if(tree.getId(p) == self)
+						continue;
+					double dx = vx - tree.getX(p);
+					double dy = vy - tree.getY(p);
+					double dSq = dx*dx + dy*dy;
+					if(dSq == 0){
+						//another vertex sat exactly on top of v
+						fx += LayoutGraph.jitter(v, tree.getId(p), 0) * K;
+						fy += LayoutGraph.jitter(v, tree.getId(p), 1) * K;
+						continue;
+					}
+					double mul = KSQ / dSq;
+					fx += dx * mul;
+					fy += dy * mul;
 				}
-				
-				GraphLayoutReingold GLR = new GraphLayoutReingold();
-				GLR.setVertices(sub.getVertices());
-				GLR.setEdges(sub.getEdges());
-				GLR.updateLayout();
-				double diffX = theVertex.getX() - old.get(v).getX();
-				double diffY = theVertex.getY() - old.get(v).getY();
-				
-				Point2D transV = new Point2D.Double(diffX, diffY);
-				f.add(transV);
+				continue;
 			}
-		} else if(s/d < THETA){
-			//threshold reached, compare with cluster of 
-			//nodes (i.e. the centre of mass)
-			sub.addVertex(theVertex);
-			Vertex nodeVertex = sub.createVertex(node.comX, node.comY, 1);
-			if(isConnection(v, values)){
-				sub.createEdge(theVertex, nodeVertex);
+
+			double dx = vx - tree.getCOMX(node);
+			double dy = vy - tree.getCOMY(node);
+			double dSq = dx*dx + dy*dy;
+			double s = tree.getMaxX(node) - tree.getMinX(node);
+			boolean inside = vx >= tree.getMinX(node) && vx < tree.getMaxX(node)
+					&& vy >= tree.getMinY(node) && vy < tree.getMaxY(node);
+			if(s*s < THETA*THETA*dSq && !inside){
+				//threshold reached, treat the quadrant as one body
+				double mul = KSQ * tree.getMass(node) / dSq;
+				fx += dx * mul;
+				fy += dy * mul;
+			} else {
+				//open the quadrant
+				if(top + 4 > stack.length)
+					stack = stacks[slice] = Arrays.copyOf(stack, stack.length * 2);
+				stack[top++] = child;
+				stack[top++] = child + 1;
+				stack[top++] = child + 2;
+				stack[top++] = child + 3;
 			}
-			
-			GraphLayoutReingold GLR = new GraphLayoutReingold();
-			GLR.setVertices(sub.getVertices());
-			GLR.setEdges(sub.getEdges());
-			GLR.updateLayout();
-			double diffX = theVertex.getX() - old.get(v).getX();
-			double diffY = theVertex.getY() - old.get(v).getY();
-			
-			Point2D trans = new Point2D.Double(diffX, diffY);
-			f.add(trans);
-			
-		} else if(node.hasChildren && !(s/d < THETA )){
-			//recurse the children nodes
-			if(node.NE != null)
-				computeForce(v, node.NE, f);
-			
-			if(node.SE != null)
-				computeForce(v, node.SE, f);
-			
-			if(node.SW != null)
-				computeForce(v, node.SW, f);
-			
-			if(node.NW != null)
-				computeForce(v, node.NW, f);
-			
-		}		
-    }
-	
-	//check whether an edge exists between a vertex and a 
-	//collection of vertices
-    private boolean isConnection(Vertex v, ArrayList<Vertex> u){
-    	boolean connected = false;
-    	
-    	for(int i=0; i< u.size(); i++){
-    		Vertex dest = u.get(i);
-    		
-    		if(v.isConnected(dest)){
-    			connected = true;
-    			return connected;
-    		}
-    	}
-    	return connected;
-    }
-}
\ No newline at end of file
+		}
+
+		dispX[v] += fx;
+		dispY[v] += fy;
+	}
+
+	/* Pulls the two ends of every edge together by d^2 / k */
+	private void attract(){
+		final double[] x = graph.x;
+		final double[] y = graph.y;
+		final int[] from = graph.from;
+		final int[] to = graph.to;
+
+		for(int e=0; e<from.length; e++){
+			int p = from[e];
+			int q = to[e];
+			double dx = x[p] - x[q];
+			double dy = y[p] - y[q];
+			double mul = Math.sqrt(dx*dx + dy*dy) / K;
+			dispX[p] -= dx * mul;
+			dispY[p] -= dy * mul;
+			dispX[q] += dx * mul;
+			dispY[q] += dy * mul;
+		}
+	}
+
+	/* Pulls vertex v towards each of its neighbours, the same force
+	 * attract() gives its end of the edge */
+	private void attract(int v){
+		final double[] x = graph.x;
+		final double[] y = graph.y;
+		final int end = graph.adjacencyStart[v + 1];
+
+		for(int a=graph.adjacencyStart[v]; a<end; a++){
+			int u = graph.adjacency[a];
+			double dx = x[v] - x[u];
+			double dy = y[v] - y[u];
+			double mul = Math.sqrt(dx*dx + dy*dy) / K;
+			dispX[v] -= dx * mul;
+			dispY[v] -= dy * mul;
+		}
+	}
+
+	/* Moves the first count vertices along their displacement, by at
+	 * most the step, and reports the energy and movement to the
+	 * scheduler */
+	private void move(LayoutScheduler scheduler, int count){
+		final double[] x = graph.x;
+		final double[] y = graph.y;
+		final double t = scheduler.getStep();
+		double energy = 0;
+		double moved = 0;
+
+		for(int v=0; v<count; v++){
+			double lenSq = dispX[v]*dispX[v] + dispY[v]*dispY[v];
+			if(lenSq == 0)
+				continue;
+			double len = Math.sqrt(lenSq);
+			double mul = Math.min(len, t) / len;
+			x[v] += dispX[v] * mul;
+			y[v] += dispY[v] * mul;
+			energy += lenSq;
+			moved += len * mul;
+		}
+
+		scheduler.update(energy, moved);
+	}
+}
@@ -0,0 +1,181 @@
+package graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multilevel force directed layout, after Walshaw and FM3.
+ * <p>
+ * The graph is coarsened by repeatedly contracting a maximal matching,
+ * each matched pair becoming one vertex of the next level, until it is
+ * small or stops shrinking. The coarsest level is laid out with the
+ * Reingold forces, then scaled from their natural edge length, ENERGY,
+ * to the K of the refinement. Each finer level then starts with its
+ * vertices placed on the coarse vertex they were merged into, and is
+ * refined with a short run of the Barnes-Hut forces of
+ * GraphLayoutKirsty.
+ * <p>
+ * Since the global shape is settled on the small levels, the fine
+ * levels only need a few iterations each, and with about log n levels
+ * the layout takes O(n log n) rather than the many flat iterations a
+ * large graph needs to untangle. The matching order and the offsets a
+ * level starts from are pseudo random but fixed, see LayoutGraph.jitter,
+ * so the same graph is always laid out the same way.
+ *
+ * @author Kirsty Williams
+ */
+public class GraphLayoutMultilevel extends DefaultGraphLayout implements
+		GraphLayout {
+
+	private static final int COARSEST_SIZE = 50; // stop coarsening at this many vertices
+	private static final double MINIMUM_SHRINK = 0.8; // or when a level keeps more than this fraction
+	private static final int COARSEST_ITERATIONS = 300; // at most, as for the refinement
+	private static final int REFINE_ITERATIONS = 50;
+	private static final double TOLERANCE = 0.01;
+	private static final double K = 50; // natural spring length of the refinement
+
+	private final GraphLayoutReingold coarsest = new GraphLayoutReingold();
+	private final GraphLayoutKirsty refine = new GraphLayoutKirsty();
+
+	public GraphLayoutMultilevel() {
+		setName("Multilevel");
+	}
+
+	/**
+	 * Sets the number of threads both the coarsest layout and the
+	 * refinement compute their forces on. The default is one.
+	 */
+	public final void setThreads(final int threads) {
+		coarsest.setThreads(threads);
+		refine.setThreads(threads);
+	}
+
+	public final void updateLayout() {
+		final LayoutGraph graph = new LayoutGraph(V, E);
+		layout(graph);
+		graph.store();
+	}
+
+	/**
+	 * Lays out the positions held in the graph's arrays.
+	 */
+	final void layout(final LayoutGraph graph) {
+		// levels.get(i + 1) is the contraction of levels.get(i) through maps.get(i)
+		final List<LayoutGraph> levels = new ArrayList<LayoutGraph>();
+		final List<int[]> maps = new ArrayList<int[]>();
+		levels.add(graph);
+
+		LayoutGraph level = graph;
+		while (level.getNumVertices() > COARSEST_SIZE) {
+			final int[] map = new int[level.getNumVertices()];
+			final LayoutGraph coarse = coarsen(level, map, maps.size());
+			if (coarse.getNumVertices() > MINIMUM_SHRINK * level.getNumVertices())
+				break;
+
+			levels.add(coarse);
+			maps.add(map);
+			level = coarse;
+		}//end while
+
+		coarsest.layout(level, new LayoutScheduler(COARSEST_ITERATIONS, TOLERANCE), COARSEST_ITERATIONS);
+		scale(level, K / GraphLayoutReingold.ENERGY);
+
+		final LayoutScheduler scheduler = new LayoutScheduler(REFINE_ITERATIONS, TOLERANCE);
+		for (int i = levels.size() - 2; i >= 0; i--) {
+			prolong(levels.get(i + 1), levels.get(i), maps.get(i));
+			refine.layout(levels.get(i), scheduler, K);
+		}//end for
+	}
+
+	/**
+	 * Contracts a maximal matching of the graph, the given level of the
+	 * layout. Vertices are visited in a pseudo random order, a different
+	 * one on each level, and each unmatched vertex is paired with its
+	 * unmatched neighbour of lowest degree, which keeps hubs free to
+	 * absorb the leaves around them on later levels. map receives the
+	 * coarse vertex each vertex is merged into; a coarse vertex sits at
+	 * the midpoint of the pair.
+	 */
+	private LayoutGraph coarsen(final LayoutGraph graph, final int[] map, final int depth) {
+		final int n = graph.getNumVertices();
+		final int[] start = graph.adjacencyStart;
+		final int[] adjacency = graph.adjacency;
+
+		final int[] order = new int[n];
+		for (int v = 0; v < n; v++) {
+			final int j = (int) ((LayoutGraph.jitter(-1 - depth, v, 0) + 0.5) * (v + 1));
+			order[v] = order[j];
+			order[j] = v;
+		}//end for
+
+		Arrays.fill(map, -1);
+		final double[] x = new double[n];
+		final double[] y = new double[n];
+		int size = 0;
+		for (int v : order) {
+			if (map[v] >= 0)
+				continue;
+
+			int match = -1;
+			for (int a = start[v]; a < start[v + 1]; a++) {
+				final int u = adjacency[a];
+				if (map[u] < 0 && (match < 0 || start[u + 1] - start[u] < start[match + 1] - start[match]))
+					match = u;
+			}//end for
+
+			map[v] = size;
+			if (match < 0) {
+				x[size] = graph.x[v];
+				y[size] = graph.y[v];
+			} else {
+				map[match] = size;
+				x[size] = (graph.x[v] + graph.x[match]) / 2;
+				y[size] = (graph.y[v] + graph.y[match]) / 2;
+			}//end if
+			size++;
+		}//end for
+
+		final int m = graph.getNumEdges();
+		final int[] from = new int[m];
+		final int[] to = new int[m];
+		for (int e = 0; e < m; e++) {
+			from[e] = map[graph.from[e]];
+			to[e] = map[graph.to[e]];
+		}//end for
+
+		return new LayoutGraph(Arrays.copyOf(x, size), Arrays.copyOf(y, size), from, to, m);
+	}
+
+	/**
+	 * Scales the positions of the graph by the given factor about their
+	 * centre.
+	 */
+	private static void scale(final LayoutGraph graph, final double factor) {
+		final int n = graph.getNumVertices();
+		double cx = 0, cy = 0;
+		for (int v = 0; v < n; v++) {
+			cx += graph.x[v];
+			cy += graph.y[v];
+		}//end for
+		cx /= n;
+		cy /= n;
+
+		for (int v = 0; v < n; v++) {
+			graph.x[v] = cx + (graph.x[v] - cx) * factor;
+			graph.y[v] = cy + (graph.y[v] - cy) * factor;
+		}//end for
+	}
+
+	/**
+	 * Places each vertex of the finer level on its coarse vertex, moved
+	 * by a small pseudo random offset so that matched pairs can
+	 * separate.
+	 */
+	private void prolong(final LayoutGraph coarse, final LayoutGraph fine, final int[] map) {
+		for (int v = 0; v < fine.getNumVertices(); v++) {
+			fine.x[v] = coarse.x[map[v]] + LayoutGraph.jitter(v, map[v], 0) * K / 10;
+			fine.y[v] = coarse.y[map[v]] + LayoutGraph.jitter(v, map[v], 1) * K / 10;
+		}//end for
+	}
+}
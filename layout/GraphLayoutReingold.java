@@ -1,226 +1,296 @@
 package graph.layout;
 
-import java.awt.geom.Point2D;
-
-import utils.StopWatch;
-
-import gnu.trove.map.hash.THashMap;
-import gnu.trove.procedure.TObjectProcedure;
-import gnu.trove.set.hash.THashSet;
-import graph.Edge;
-import graph.Vertex;
+import java.util.Arrays;
 
 /**
 * @author Kirsty Williams
 */
 public class GraphLayoutReingold extends DefaultGraphLayout implements
-		GraphLayout {
+		GraphLayout, IterativeLayout {
 
 	private static final int ITERATIONS = 1;
-	private static final int ENERGY = 100;
+	static final int ENERGY = 100; // natural edge length
 	public static final int LENGTH_MAXIMUM = (ENERGY*5) * (ENERGY*5);
-	public GraphLayoutReingold()
-	{
-		setName("Reingold");
-	}
-	
-	private final class Push implements TObjectProcedure<Vertex> {
-
-		private final class NestedIterator implements TObjectProcedure<Vertex> {
-			private final THashMap<Vertex, Point2D> disp;
-			private double vDiffX;
-			private double vDiffY;
-			
-			private final double kSq = ENERGY * ENERGY;
-			private Point2D vDisp;
-			private Vertex v;
-
-			private double len, mul;
-
-			private double C;
-
-			public NestedIterator(final THashMap<Vertex, Point2D> disp) {
-				this.disp = disp;
-			}
-
-			public final boolean execute(final Vertex u) {
-				if (v == u)
-					return true;
-
-				// Euclidean Distance
-				vDiffX = v.getX() - u.getX();
-				vDiffY = v.getY() - u.getY();
-				
-				len = (vDiffX * vDiffX)
-						+ (vDiffY * vDiffY); // distance
+	private static final double C = 0.6931471805599453;
+	private static final double DISPLACEMENT_MINIMUM = 100; // smaller moves are ignored
+	private static final double STEP = 10; // larger moves are cut down to the scheduler's step, which starts here
+	private static final int MAX_ITERATIONS = 1000; // over the calls of one schedule
+	private static final double TOLERANCE = 0.01; // mean movement per vertex, as a fraction of STEP, that counts as settled
+
+	private boolean gridRepulsion = true;
+	private final RepulsionGrid grid = new RepulsionGrid(Math.sqrt(LENGTH_MAXIMUM));
+	private double[] dispX = new double[0];
+	private double[] dispY = new double[0];
+	private LayoutWorkers workers;
+	private final LayoutScheduler scheduler = new LayoutScheduler(MAX_ITERATIONS, TOLERANCE);
+	private LayoutGraph graph; // graph and scheduler of the run between begin and finish
+	private LayoutScheduler active;
+	private double[] settledX; // where the own scheduler's last run left the graph
+	private double[] settledY;
+	private int[] settledFrom;
+	private int[] settledTo;
+
+	private final class Forces implements LayoutWorkers.Range {
+		private LayoutGraph graph;
+		private boolean pullPerVertex;
+
+		public final void run(final int from, final int to, final int slice) {
+			final int n = graph.getNumVertices();
+			for (int v = from; v < to; v++) {
+				if (gridRepulsion) {
+					push(graph, v);
+				} else {
+					for (int u = 0; u < n; u++)
+						push(graph, v, u);
+				}//end if
 				
-				if (len > LENGTH_MAXIMUM) // Too far away, don't bother
-					return true;
-				
-				mul = kSq / (len * C);
-				if (Double.isInfinite(mul)){
-					//System.out.println(kSq + ":" + len + ":" + C);
-					mul = Math.random();
-					//return true;
-				}
-				
-				vDisp = disp.get(v);
-
-				vDisp.setLocation(vDisp.getX() + (vDiffX * mul),
-						vDisp.getY() + (vDiffY * mul));
-
-				return true;
-			}
+				if (pullPerVertex)
+					pull(graph, v);
+			}//end for
 		}
+	}
 
-		private final THashSet<Vertex> V;
-		private final NestedIterator nestedIterator;
-
-		public Push(final THashMap<Vertex, Point2D> disp, final THashSet<Vertex> V) {
-			this.V = V;
-			this.nestedIterator = new NestedIterator(disp);
-		}
+	private final Forces forces = new Forces();
 
-		public final boolean execute(final Vertex v) {
-			nestedIterator.v = v;
-			V.forEach(nestedIterator);
+	public GraphLayoutReingold()
+	{
+		setName("Reingold");
+	}
 
-			return true;
-		}
+	/**
+	 * Chooses how vertices are found for the repulsive force. With the
+	 * grid (the default) vertices are bucketed into cells as wide as
+	 * the LENGTH_MAXIMUM cut-off, and each vertex is only compared
+	 * with those in the nine cells around it. Without it every pair
+	 * of vertices is compared. Both give the same forces.
+	 */
+	public final void setGridRepulsion(final boolean gridRepulsion) {
+		this.gridRepulsion = gridRepulsion;
 	}
 
-	private final class Pull implements TObjectProcedure<Edge> {
-		private final THashMap<Vertex, Point2D> disp;
+	/**
+	 * Sets the number of threads the forces are computed on. With more
+	 * than one, each thread computes the repulsion and attraction on
+	 * its own slice of the vertices, reading the shared grid, and sums
+	 * the attraction over each vertex's edges in a fixed order, so the
+	 * result does not depend on thread scheduling. The default is one.
+	 */
+	public final void setThreads(final int threads) {
+		if (workers != null)
+			workers.shutdown();
+		workers = threads > 1 ? new LayoutWorkers(threads) : null;
+	}
 
-		private double vDiffX;
-		private double vDiffY;
-		private Point2D vDisp;
+	/**
+	 * Repulsion of vertex v by every vertex within the cut-off, using
+	 * the grid.
+	 */
+	private final void push(final LayoutGraph graph, final int v) {
+		final int cx = grid.cellOf(graph.x[v]);
+		final int cy = grid.cellOf(graph.y[v]);
+		for (int gx = cx - 1; gx <= cx + 1; gx++) {
+			for (int gy = cy - 1; gy <= cy + 1; gy++) {
+				for (int u = grid.first(gx, gy); u >= 0; u = grid.next(u)) {
+					if (grid.inCell(u, gx, gy))
+						push(graph, v, u);
+				}//end for
+			}//end for
+		}//end for
+	}
 
-		private Vertex p, q;
+	private final void push(final LayoutGraph graph, final int v, final int u) {
+		if (v == u)
+			return;
+
+		// Euclidean Distance
+		final double vDiffX = graph.x[v] - graph.x[u];
+		final double vDiffY = graph.y[v] - graph.y[u];
+		final double len = (vDiffX * vDiffX) + (vDiffY * vDiffY);
+
+		if (len > LENGTH_MAXIMUM) // Too far away, don't bother
+			return;
+		if (len == 0) { // on top of each other, push apart in some direction
+			dispX[v] += LayoutGraph.jitter(v, u, 0) * ENERGY;
+			dispY[v] += LayoutGraph.jitter(v, u, 1) * ENERGY;
+			return;
+		}//end if
+
+		final double mul = (ENERGY * ENERGY) / (len * C);
+		dispX[v] += vDiffX * mul;
+		dispY[v] += vDiffY * mul;
+	}
 
-		private double mul, C, len;
-		private final double k = ENERGY;
+	/**
+	 * Attraction along every edge.
+	 */
+	private final void pull(final LayoutGraph graph) {
+		final double[] x = graph.x;
+		final double[] y = graph.y;
+		final int[] from = graph.from;
+		final int[] to = graph.to;
+
+		for (int e = 0; e < from.length; e++) {
+			final int p = from[e];
+			final int q = to[e];
+			final double dx = x[p] - x[q];
+			final double dy = y[p] - y[q];
+
+			final double mul = Math.sqrt(dx * dx + dy * dy) / ENERGY / C;
+			dispX[p] -= dx * mul;
+			dispY[p] -= dy * mul;
+			dispX[q] += dx * mul;
+			dispY[q] += dy * mul;
+		}//end for
+	}
 
-		public Pull(final THashMap<Vertex, Point2D> disp) {
-			this.disp = disp;
-		}
+	/**
+	 * Attraction on vertex v along each of its edges, the same force
+	 * pull(graph) gives its end of the edge.
+	 */
+	private final void pull(final LayoutGraph graph, final int v) {
+		final double[] x = graph.x;
+		final double[] y = graph.y;
+		final int end = graph.adjacencyStart[v + 1];
+
+		for (int a = graph.adjacencyStart[v]; a < end; a++) {
+			final int u = graph.adjacency[a];
+			final double dx = x[v] - x[u];
+			final double dy = y[v] - y[u];
+
+			final double mul = Math.sqrt(dx * dx + dy * dy) / ENERGY / C;
+			dispX[v] -= dx * mul;
+			dispY[v] -= dy * mul;
+		}//end for
+	}
 
-		public final boolean execute(final Edge e) {
-			p = e.getVertexFrom();
-			q = e.getVertexTo();
-			
-			len = p.getEuclideanDistance(q);		
-			
-			mul = len / k / C;
-			vDiffX = (p.getX() - q.getX()) * mul;
-			vDiffY = (p.getY() - q.getY()) * mul;
-			
-			vDisp = disp.get(p);
-			vDisp.setLocation(vDisp.getX() - vDiffX, vDisp.getY() - vDiffY);
-
-			vDisp = disp.get(q);
-			vDisp.setLocation(vDisp.getX() + vDiffX, vDisp.getY() + vDiffY);
-			return true;
-		}
+	private final void setPositions(final LayoutGraph graph, final LayoutScheduler scheduler) {
+		final double step = scheduler.getStep();
+		double energy = 0;
+		double moved = 0;
+
+		for (int v = 0; v < graph.x.length; v++) {
+			double len = dispX[v] * dispX[v] + dispY[v] * dispY[v];
+			energy += len;
+
+			if (Math.sqrt(len) < DISPLACEMENT_MINIMUM)
+				continue;
+			if (len > step * step) {
+				final double div = step / Math.sqrt(len);
+				dispX[v] *= div;
+				dispY[v] *= div;
+				len = step * step;
+			}//end if
+
+			graph.x[v] += dispX[v];
+			graph.y[v] += dispY[v];
+			moved += Math.sqrt(len);
+		}//end for
 
+		scheduler.update(energy, moved);
 	}
 
-	private final class SetPositions implements TObjectProcedure<Vertex> {
-		private final THashMap<Vertex, Point2D> disp;
+	public final void updateLayout() {
+		final LayoutGraph graph = new LayoutGraph(V, E);
+		layout(graph, own(graph), ITERATIONS);
+		graph.store();
+	}
 
-		private Point2D vDisp;
-		private double max = 10;
-		private double len;
-		private double div = 0;
+	/**
+	 * Starts the cooling schedule again. The schedule also starts again
+	 * by itself when vertices or edges are added or removed, or vertices
+	 * are moved by anything other than this layout.
+	 */
+	public final void restart() {
+		scheduler.reset();
+	}
 
-		public SetPositions(final THashMap<Vertex, Point2D> disp) {
-			this.disp = disp;
-		}
+	/* The own scheduler, reset if the graph is not where its last run left it */
+	private final LayoutScheduler own(final LayoutGraph graph) {
+		if (!Arrays.equals(graph.x, settledX) || !Arrays.equals(graph.y, settledY)
+				|| !Arrays.equals(graph.from, settledFrom) || !Arrays.equals(graph.to, settledTo))
+			scheduler.reset();
+		return scheduler;
+	}
 
-		@Override
-		public final boolean execute(final Vertex v) {
-			vDisp = disp.get(v);
-			len = vDisp.getX() * vDisp.getX() + vDisp.getY() * vDisp.getY();
-
-			if (Math.sqrt(len) < 100)
-				return true;
-			if (len > max * max) {
-				len = Math.sqrt(len);
-				div = max / len;
-				vDisp.setLocation(vDisp.getX() * div, vDisp.getY() * div);
-			}
-			
-			v.setAddition(vDisp);
-			return true;
-		}
+	/**
+	 * Scheduler shared by the calls to updateLayout(), for its per
+	 * iteration energy.
+	 */
+	public final LayoutScheduler getScheduler() {
+		return scheduler;
 	}
 
-	private final class SetInitial implements TObjectProcedure<Vertex> {
-		private final THashMap<Vertex, Point2D> disp;
+	/**
+	 * Runs up to the given number of iterations on the positions held
+	 * in the graph's arrays, fewer if the scheduler stops first. The
+	 * scheduler is begun if it has not been, or was begun for another
+	 * number of vertices; otherwise its step carries on from the last
+	 * call. Nothing is read from or written to the vertices.
+	 */
+	final void layout(final LayoutGraph graph, final LayoutScheduler scheduler, final int iterations) {
+		begin(graph, scheduler);
+		int i = iterations;
+		while (i-- != 0 && step());
+		finish();
+	}
 
-		public SetInitial(final THashMap<Vertex, Point2D> disp) {
-			this.disp = disp;
-		}
+	/**
+	 * Starts a run on the graph's positions with this layout's own
+	 * scheduler, to be driven one iteration at a time by step(). As in
+	 * updateLayout() the run carries on from where the last one stopped
+	 * if the graph is unchanged since, and starts a new schedule if not.
+	 */
+	public final void begin(final LayoutGraph graph) {
+		begin(graph, own(graph));
+	}
 
-		public final boolean execute(final Vertex v) {
-			disp.put(v, new Point2D.Double());
-			
-			return true;
-		}
+	private final void begin(final LayoutGraph graph, final LayoutScheduler scheduler) {
+		final int n = graph.getNumVertices();
+		if (dispX.length < n) {
+			dispX = new double[n];
+			dispY = new double[n];
+		}//end if
+		if (!scheduler.isBegun() || scheduler.getNumVertices() != n)
+			scheduler.begin(n, STEP);
+
+		this.graph = graph;
+		this.active = scheduler;
+		forces.graph = graph;
 	}
 
-	private final class EdgeReduce implements TObjectProcedure<Edge> {
-		final THashSet<Edge> E;
+	public final boolean step() {
+		if (!active.isRunning())
+			return false;
+		final int n = graph.getNumVertices();
 
-		public EdgeReduce(final THashSet<Edge> E) {
-			this.E = E;
-		}
+		Arrays.fill(dispX, 0, n, 0);
+		Arrays.fill(dispY, 0, n, 0);
 
-		public final boolean execute(final Edge e) {
-			if (E.contains(e.getReverseEdge()))
-				return true;
-			
-			E.add(e);
-			
-			return true;
-		}
+		if (gridRepulsion)
+			grid.build(graph.x, graph.y, n);
 
+		if (workers == null) {
+			forces.pullPerVertex = false;
+			forces.run(0, n, 0);
+			pull(graph);
+		} else {
+			forces.pullPerVertex = true;
+			workers.run(n, forces);
+		}//end if
+
+		setPositions(graph, active);
+		return active.isRunning();
 	}
 
-	public final void updateLayout() {
-		StopWatch SW = new StopWatch();
-		SW.start();
-		final THashSet<Edge> E = new THashSet<Edge>(this.E.size() / 2);
-		
-		final EdgeReduce edgeReduce = new EdgeReduce(E);
-		this.E.forEach(edgeReduce);
-		E.compact();
-		V.compact();
-
-		final THashMap<Vertex, Point2D> disp = new THashMap<Vertex, Point2D>(
-				V.size());
-		//final TIntFloatHashMap dispX = new TIntFloatHashMap(V.size());
-		//final TIntFloatHashMap dispY = new TIntFloatHashMap(V.size());
-
-		final SetInitial setInitial = new SetInitial(disp);
-		
-		final Push push = new Push(disp, V);
-		final Pull pull = new Pull(disp);
-		final SetPositions setPositions = new SetPositions(disp);
-
-		final double C = 0.6931471805599453;
-		push.nestedIterator.C = C;
-		pull.C = C;
-		V.forEach(setInitial);
-		
-		
-		for (int i = ITERATIONS; i != 0; i--){
-			V.forEach(push);
-			E.forEach(pull);
-
-			V.forEach(setPositions);
-			System.out.println(i);
-		}//end for
-		System.out.println(SW.getElapsedTime());
+	public final void finish() {
+		if (active == scheduler && graph != null) {
+			settledX = graph.x.clone();
+			settledY = graph.y.clone();
+			settledFrom = graph.from;
+			settledTo = graph.to;
+		}//end if
+		graph = null;
+		active = null;
+		forces.graph = null;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package graph.layout;
+
+/**
+ * A layout that can be driven one iteration at a time, so that the
+ * positions can be looked at, or the run stopped, between iterations.
+ * <p>
+ * A run is begin(), then step() until it returns false or the caller
+ * has seen enough, then finish(). The positions are read from and
+ * written to the graph's x/y arrays; nothing touches the vertices until
+ * the caller stores the graph. A layout must only be driven from one
+ * thread at a time.
+ *
+ * @author Kirsty Williams
+ */
+public interface IterativeLayout {
+	/**
+	 * Starts a run on the positions held in graph.
+	 */
+	public void begin(LayoutGraph graph);
+
+	/**
+	 * Runs one iteration.
+	 *
+	 * @return false once the layout has settled or used up its
+	 * iterations, after which step() does nothing
+	 */
+	public boolean step();
+
+	/**
+	 * Ends the run and lets go of the graph.
+	 */
+	public void finish();
+}
@@ -0,0 +1,104 @@
+package graph.layout;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures how the forces of GraphLayoutKirsty and GraphLayoutReingold
+ * scale with the number of threads, on a random graph of 100,000
+ * vertices by default. Run with
+ * <pre>
+ * java graph.layout.LayoutBenchmark [vertices] [iterations] [threads]
+ * </pre>
+ * The graph is a ring with as many random chords again, its vertices
+ * spread at random over a square that gives each about K of room. Each
+ * layout runs the given number of iterations from the same start on 1,
+ * 2, 4 ... threads, up to the given maximum or else the number of
+ * processors, after one untimed run on a single thread to warm up the
+ * JIT. The time per iteration and the speed-up over one thread are
+ * printed. Since the forces are summed
+ * in the same order whatever the number of threads, every run must end
+ * with the positions of the single threaded one, which is checked too.
+ *
+ * @author Kirsty Williams
+ */
+public class LayoutBenchmark {
+	private static final double SPACING = 50;
+	private static final String[] LAYOUTS = { "Kirsty", "Reingold" };
+
+	public static void main(final String[] args) {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final int maximum = args.length > 2 ? Integer.parseInt(args[2]) : processors;
+
+		final Random random = new Random(1);
+		final double side = Math.sqrt(n) * SPACING;
+		final double[] x = new double[n];
+		final double[] y = new double[n];
+		for (int v = 0; v < n; v++) {
+			x[v] = random.nextDouble() * side;
+			y[v] = random.nextDouble() * side;
+		}//end for
+		final int[] from = new int[2 * n];
+		final int[] to = new int[2 * n];
+		for (int v = 0; v < n; v++) {
+			from[v] = v;
+			to[v] = (v + 1) % n;
+			from[n + v] = v;
+			to[n + v] = random.nextInt(n);
+		}//end for
+
+		System.out.println(n + " vertices, " + iterations + " iterations, " + processors + " processors");
+		System.out.println(String.format("%-10s %8s %12s %8s %6s", "layout", "threads", "ms/iteration", "speed-up", "same"));
+		for (String name : LAYOUTS) {
+			final LayoutGraph reference = new LayoutGraph(x.clone(), y.clone(), from, to, from.length);
+			run(name, 1, reference, iterations);
+
+			double single = 0;
+			for (int threads = 1; threads <= maximum; threads *= 2) {
+				final LayoutGraph graph = new LayoutGraph(x.clone(), y.clone(), from, to, from.length);
+				final double ms = run(name, threads, graph, iterations);
+				if (threads == 1)
+					single = ms;
+				final boolean same = Arrays.equals(graph.x, reference.x) && Arrays.equals(graph.y, reference.y);
+				System.out.println(String.format("%-10s %8d %12.1f %8.2f %6s", name, threads, ms, single / ms, same));
+			}//end for
+		}//end for
+	}
+
+	/**
+	 * Runs a new layout of the named kind on the graph, and returns the
+	 * time per iteration in milliseconds.
+	 */
+	private static double run(final String name, final int threads, final LayoutGraph graph, final int iterations) {
+		final IterativeLayout layout;
+		if (name.equals("Kirsty")) {
+			final GraphLayoutKirsty kirsty = new GraphLayoutKirsty();
+			kirsty.setThreads(threads);
+			layout = kirsty;
+		} else {
+			final GraphLayoutReingold reingold = new GraphLayoutReingold();
+			reingold.setThreads(threads);
+			layout = reingold;
+		}//end if
+
+		final long start = System.nanoTime();
+		int done = 0;
+		layout.begin(graph);
+		while (done < iterations) {
+			done++;
+			if (!layout.step())
+				break;
+		}//end while
+		layout.finish();
+		final long time = System.nanoTime() - start;
+
+		// let the worker threads go
+		if (layout instanceof GraphLayoutKirsty)
+			((GraphLayoutKirsty) layout).setThreads(1);
+		else
+			((GraphLayoutReingold) layout).setThreads(1);
+		return time / 1e6 / done;
+	}
+}
@@ -0,0 +1,167 @@
+package graph.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import graph.Edge;
+import graph.Vertex;
+
+/**
+ * Index based copy of a graph for the force directed layouts.
+ * Vertex positions are held in primitive x/y arrays and every
+ * undirected edge appears exactly once in the from/to arrays, so
+ * the inner loops of a layout touch no Vertex, Edge or hash map.
+ * Positions are written back to the Vertex objects by store().
+ *
+ * @author Kirsty Williams
+ */
+public class LayoutGraph {
+	public final Vertex[] vertices;
+	public final double[] x;
+	public final double[] y;
+	public final int[] from;
+	public final int[] to;
+	// the neighbours of v are adjacency[adjacencyStart[v]] ...
+	// adjacency[adjacencyStart[v+1] - 1]
+	public final int[] adjacencyStart;
+	public final int[] adjacency;
+
+	/**
+	 * Builds a graph with no Vertex objects behind it, such as a
+	 * coarsened level of a multilevel layout. The position arrays are
+	 * used as they are; the edges are deduplicated as in the other
+	 * constructor. store() does nothing on such a graph.
+	 */
+	public LayoutGraph(final double[] x, final double[] y, final int[] from, final int[] to, final int numEdges) {
+		this.vertices = null;
+		this.x = x;
+		this.y = y;
+
+		final int n = x.length;
+		final TLongHashSet seen = new TLongHashSet(numEdges);
+		final int[] f = new int[numEdges];
+		final int[] t = new int[numEdges];
+		int m = 0;
+		for (int e = 0; e < numEdges; e++) {
+			final int p = from[e];
+			final int q = to[e];
+			if (p == q || !seen.add((long) Math.min(p, q) * n + Math.max(p, q)))
+				continue;
+
+			f[m] = p;
+			t[m] = q;
+			m++;
+		}//end for
+
+		this.from = Arrays.copyOf(f, m);
+		this.to = Arrays.copyOf(t, m);
+		this.adjacencyStart = new int[n + 1];
+		this.adjacency = new int[2 * m];
+		buildAdjacency();
+	}
+
+	public LayoutGraph(final Collection<Vertex> V, final Collection<Edge> E) {
+		final int n = V.size();
+		final TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(n, 0.5f, -1);
+
+		vertices = new Vertex[n];
+		x = new double[n];
+		y = new double[n];
+
+		int i = 0;
+		for (Vertex v : V) {
+			vertices[i] = v;
+			x[i] = v.getX();
+			y[i] = v.getY();
+			index.put(v, i);
+			i++;
+		}//end for
+
+		// Reverse and repeated edges are dropped, as are self loops
+		// and edges leaving the vertex set
+		final TLongHashSet seen = new TLongHashSet(E.size());
+		final int[] f = new int[E.size()];
+		final int[] t = new int[E.size()];
+		int m = 0;
+		for (Edge e : E) {
+			final int p = index.get(e.getVertexFrom());
+			final int q = index.get(e.getVertexTo());
+			if (p < 0 || q < 0 || p == q)
+				continue;
+
+			final long key = (long) Math.min(p, q) * n + Math.max(p, q);
+			if (!seen.add(key))
+				continue;
+
+			f[m] = p;
+			t[m] = q;
+			m++;
+		}//end for
+
+		from = Arrays.copyOf(f, m);
+		to = Arrays.copyOf(t, m);
+
+		adjacencyStart = new int[n + 1];
+		adjacency = new int[2 * m];
+		buildAdjacency();
+	}
+
+	/* Both ends of every edge, grouped by vertex */
+	private void buildAdjacency() {
+		final int n = x.length;
+		final int m = from.length;
+		for (int e = 0; e < m; e++) {
+			adjacencyStart[from[e] + 1]++;
+			adjacencyStart[to[e] + 1]++;
+		}//end for
+		for (int v = 0; v < n; v++)
+			adjacencyStart[v + 1] += adjacencyStart[v];
+
+		final int[] fill = Arrays.copyOf(adjacencyStart, n);
+		for (int e = 0; e < m; e++) {
+			adjacency[fill[from[e]]++] = to[e];
+			adjacency[fill[to[e]]++] = from[e];
+		}//end for
+	}
+
+	public final int getNumVertices() {
+		return x.length;
+	}
+
+	/**
+	 * Pseudo random number in [-0.5, 0.5) for vertex v pushed away from
+	 * vertex u along the given axis (0 or 1), to separate vertices that
+	 * sit on the same point. It depends only on its arguments, so that
+	 * the layouts stay deterministic and need no shared Random across
+	 * threads, and jitter(u, v, axis) is -jitter(v, u, axis), so that
+	 * the two vertices move apart.
+	 */
+	static double jitter(final int v, final int u, final int axis) {
+		// fmix64 from MurmurHash3
+		long h = ((long) Math.min(v, u) << 32 | Math.max(v, u)) * 2 + axis;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		final double r = (h >>> 11) * 0x1.0p-53 - 0.5;
+		return v < u ? r : -r;
+	}
+
+	public final int getNumEdges() {
+		return from.length;
+	}
+
+	/**
+	 * Copies the x/y arrays back to the Vertex objects.
+	 */
+	public final void store() {
+		if (vertices == null)
+			return;
+		for (int i = 0; i < vertices.length; i++)
+			vertices[i].setLocation(x[i], y[i]);
+	}
+}
@@ -0,0 +1,142 @@
+package graph.layout;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * Step length and stopping rule for the iterations of a force directed
+ * layout, following the adaptive cooling of Hu (2005).
+ * <p>
+ * After each iteration the layout reports its energy, the sum of the
+ * squared forces on the vertices, and how far the vertices moved in
+ * total. While the energy keeps falling the step is left alone, and
+ * after PROGRESS_STEPS falling iterations in a row it is lengthened by
+ * 1/COOLING; as soon as the energy rises the step is shortened by
+ * COOLING. The layout has converged once the vertices moved less than
+ * tolerance times the step they started with, on average.
+ * <p>
+ * The energy of every iteration since begin() is kept, so that the
+ * iterations saved over a fixed schedule can be seen.
+ *
+ * @author Kirsty Williams
+ */
+public class LayoutScheduler {
+	public static final double COOLING = 0.9;
+	public static final int PROGRESS_STEPS = 5;
+
+	private final int maxIterations;
+	private final double tolerance;
+	private final TDoubleArrayList energies = new TDoubleArrayList();
+
+	private int numVertices = -1;
+	private double initialStep;
+	private double step;
+	private double energy;
+	private int progress;
+	private boolean converged;
+
+	/**
+	 * @param maxIterations - iterations after which the layout stops
+	 * whether or not it has converged
+	 * @param tolerance - mean movement per vertex, as a fraction of the
+	 * initial step, below which the layout has converged
+	 */
+	public LayoutScheduler(final int maxIterations, final double tolerance) {
+		this.maxIterations = maxIterations;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Starts a new run over numVertices vertices with the given step.
+	 */
+	public final void begin(final int numVertices, final double step) {
+		this.numVertices = numVertices;
+		this.initialStep = step;
+		this.step = step;
+		this.energy = Double.POSITIVE_INFINITY;
+		this.progress = 0;
+		this.converged = false;
+		energies.clear();
+	}
+
+	/**
+	 * Forgets the current run, so that isBegun() is false until the
+	 * next begin().
+	 */
+	public final void reset() {
+		numVertices = -1;
+	}
+
+	public final boolean isBegun() {
+		return numVertices >= 0;
+	}
+
+	public final int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * Records one iteration and adapts the step for the next.
+	 *
+	 * @param energy - sum of the squared forces before moving
+	 * @param displacement - total distance moved by the vertices
+	 * @return true if the layout should keep iterating
+	 */
+	public final boolean update(final double energy, final double displacement) {
+		energies.add(energy);
+
+		if (energy < this.energy) {
+			if (++progress >= PROGRESS_STEPS) {
+				progress = 0;
+				step /= COOLING;
+			}//end if
+		} else {
+			progress = 0;
+			step *= COOLING;
+		}//end if
+		this.energy = energy;
+
+		if (displacement < tolerance * initialStep * numVertices)
+			converged = true;
+		return isRunning();
+	}
+
+	/**
+	 * False once the layout has converged or used up its iterations.
+	 */
+	public final boolean isRunning() {
+		return !converged && energies.size() < maxIterations;
+	}
+
+	public final boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Longest distance a vertex may move in the next iteration.
+	 */
+	public final double getStep() {
+		return step;
+	}
+
+	public final int getIterations() {
+		return energies.size();
+	}
+
+	public final int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Energy of the last iteration, or infinity before the first.
+	 */
+	public final double getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * Energy of every iteration since begin(), oldest first.
+	 */
+	public final double[] getEnergies() {
+		return energies.toArray();
+	}
+}
@@ -0,0 +1,99 @@
+package graph.layout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fixed pool of threads for the parallel phases of the force
+ * directed layouts. run() splits the vertices 0..n-1 into one
+ * contiguous slice per thread and waits for every slice to finish,
+ * so a phase can only write the displacement slots of the vertices
+ * in its own slice, while reading anything that no phase is writing.
+ * <p>
+ * The slices depend only on n and the number of threads, so a phase
+ * that sums in a fixed order within each vertex gives the same result
+ * however the threads are scheduled.
+ *
+ * @author Kirsty Williams
+ */
+public class LayoutWorkers {
+	/**
+	 * One phase of a layout iteration over a slice of the vertices.
+	 */
+	public interface Range {
+		/**
+		 * @param from - first vertex of the slice
+		 * @param to - one past the last vertex of the slice
+		 * @param slice - index of the slice, 0..getThreads()-1, for
+		 * picking per thread scratch space
+		 */
+		public void run(int from, int to, int slice);
+	}
+
+	private final int threads;
+	private final ExecutorService executor;
+
+	public LayoutWorkers(final int threads) {
+		this.threads = Math.max(1, threads);
+		this.executor = this.threads == 1 ? null : Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "layout-worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public final int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Runs range over 0..n-1 and returns once every slice is done.
+	 */
+	public final void run(final int n, final Range range) {
+		if (executor == null) {
+			range.run(0, n, 0);
+			return;
+		}//end if
+
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+		for (int i = 0; i < threads; i++) {
+			final int slice = i;
+			final int from = (int) ((long) n * i / threads);
+			final int to = (int) ((long) n * (i + 1) / threads);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					range.run(from, to, slice);
+					return null;
+				}
+			});
+		}//end for
+
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for layout workers", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}//end try
+	}
+
+	/**
+	 * Stops the threads. The workers cannot be used afterwards.
+	 */
+	public final void shutdown() {
+		if (executor != null)
+			executor.shutdown();
+	}
+}
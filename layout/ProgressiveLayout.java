@@ -0,0 +1,308 @@
+package graph.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import graph.Edge;
+import graph.Vertex;
+import utils.QuadTree;
+import utils.VersionedQuadTree;
+
+/**
+ * Runs an IterativeLayout on a background thread within a time budget,
+ * publishing the positions as frames while it converges, so that the
+ * UI thread can draw the layout as it goes instead of waiting for it.
+ * <p>
+ * Frames are double buffered: the worker copies the positions into the
+ * back buffer and then swaps it with the front one under a lock, which
+ * readers take only to copy the front buffer out or store it in the
+ * vertices. The worker never waits on a reader for longer than a swap.
+ * <p>
+ * The worker stops when the layout settles, when its budget is used
+ * up, or after cancel(); in the last two cases resume() carries on
+ * where it stopped. The vertices are only written by store(), on the
+ * caller's thread.
+ * <p>
+ * With setIndexed(true) each frame is also published as a frozen
+ * QuadTree of the vertices in a VersionedQuadTree, so that the UI can
+ * hit-test the layout as drawn without waiting for the worker.
+ *
+ * @author Kirsty Williams
+ */
+public class ProgressiveLayout {
+	public static final long FRAME_INTERVAL = 40; // default milliseconds between frames
+
+	private final IterativeLayout layout;
+	private final Object lock = new Object();
+	private volatile long frameInterval = FRAME_INTERVAL;
+	private volatile Runnable frameListener;
+	private volatile boolean indexed;
+	private volatile VersionedQuadTree<Vertex> index;
+
+	private volatile LayoutGraph graph;
+	private double[] frontX = new double[0];
+	private double[] frontY = new double[0];
+	private double[] backX = new double[0];
+	private double[] backY = new double[0];
+	private int frame; // frames published since start()
+	private int storedFrame;
+
+	private volatile Thread worker;
+	private volatile boolean cancelled;
+	private volatile boolean done;
+	private volatile int iterations;
+
+	public ProgressiveLayout(final IterativeLayout layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * Sets how often the worker publishes a frame, in milliseconds.
+	 */
+	public final void setFrameInterval(final long millis) {
+		this.frameInterval = millis;
+	}
+
+	/**
+	 * Sets code to run on the worker thread after each frame is
+	 * published, such as asking the UI to repaint. It must not block.
+	 */
+	public final void setFrameListener(final Runnable frameListener) {
+		this.frameListener = frameListener;
+	}
+
+	/**
+	 * Sets whether the runs started from now on keep a spatial index of
+	 * each frame, see getIndex(). Off by default, as it builds a
+	 * QuadTree of every vertex per frame on the worker thread.
+	 */
+	public final void setIndexed(final boolean indexed) {
+		this.indexed = indexed;
+	}
+
+	/**
+	 * The vertices at the positions of the latest frame of the current
+	 * run, or null if it is not indexed. Each Snapshot stays the same
+	 * while the worker publishes newer ones, so it can be queried from
+	 * any thread.
+	 */
+	public final VersionedQuadTree<Vertex> getIndex() {
+		return index;
+	}
+
+	/**
+	 * Starts laying out the given vertices and edges from their current
+	 * positions, stopping any earlier run first. The vertices are read
+	 * here, on the caller's thread.
+	 *
+	 * @param budget - milliseconds the worker may run before pausing
+	 */
+	public final synchronized void start(final Collection<Vertex> V, final Collection<Edge> E, final long budget) {
+		stop();
+
+		graph = new LayoutGraph(V, E);
+		final int n = graph.getNumVertices();
+		synchronized (lock) {
+			frontX = graph.x.clone();
+			frontY = graph.y.clone();
+			backX = new double[n];
+			backY = new double[n];
+			frame = 0;
+			storedFrame = 0;
+		}//end synchronized
+		iterations = 0;
+		done = false;
+		index = indexed ? new VersionedQuadTree<Vertex>(index(graph.x, graph.y)) : null;
+
+		layout.begin(graph);
+		launch(budget);
+	}
+
+	/**
+	 * Carries on a run that was cancelled or ran out of budget.
+	 *
+	 * @return false if there is nothing to resume, because the run is
+	 * still going, has settled, or was never started
+	 */
+	public final synchronized boolean resume(final long budget) {
+		if (graph == null || done || isRunning())
+			return false;
+		launch(budget);
+		return true;
+	}
+
+	/**
+	 * Asks the worker to stop after the iteration it is on. Does not
+	 * wait for it; see await().
+	 */
+	public final void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Waits for the worker to stop.
+	 */
+	public final void await() throws InterruptedException {
+		final Thread t;
+		synchronized (this) {
+			t = worker;
+		}//end synchronized
+		if (t != null)
+			t.join();
+	}
+
+	/**
+	 * Stops the worker, waits for it and ends the run. The last frame
+	 * can still be read afterwards.
+	 */
+	public final synchronized void stop() {
+		cancel();
+		try {
+			await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while stopping the layout", e);
+		}//end try
+
+		if (graph != null && !done)
+			layout.finish();
+		done = true;
+	}
+
+	public final boolean isRunning() {
+		final Thread t = worker;
+		return t != null && t.isAlive();
+	}
+
+	/**
+	 * True once the layout has settled or the run has been stopped.
+	 */
+	public final boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Iterations run since start().
+	 */
+	public final int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Number of the latest frame, which goes up by one per frame.
+	 */
+	public final int getFrame() {
+		synchronized (lock) {
+			return frame;
+		}//end synchronized
+	}
+
+	/**
+	 * Copies the latest frame into x and y, which must have room for
+	 * every vertex.
+	 *
+	 * @return the number of the frame copied
+	 */
+	public final int copyPositions(final double[] x, final double[] y) {
+		synchronized (lock) {
+			System.arraycopy(frontX, 0, x, 0, frontX.length);
+			System.arraycopy(frontY, 0, y, 0, frontY.length);
+			return frame;
+		}//end synchronized
+	}
+
+	/**
+	 * Moves the vertices to the latest frame, if it has not been stored
+	 * already. Call this from the thread that owns the vertices.
+	 *
+	 * @return true if the vertices were moved
+	 */
+	public final boolean store() {
+		final Vertex[] vertices = graph == null ? null : graph.vertices;
+		if (vertices == null)
+			return false;
+
+		synchronized (lock) {
+			if (storedFrame == frame)
+				return false;
+			for (int i = 0; i < vertices.length; i++)
+				vertices[i].setLocation(frontX[i], frontY[i]);
+			storedFrame = frame;
+		}//end synchronized
+		return true;
+	}
+
+	private void launch(final long budget) {
+		cancelled = false;
+		worker = new Thread(new Runnable() {
+			public void run() {
+				work(TimeUnit.MILLISECONDS.toNanos(budget));
+			}
+		}, "progressive-layout");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	private void work(final long budget) {
+		final long started = System.nanoTime();
+		long lastFrame = started;
+		boolean running = true;
+
+		while (running && !cancelled && System.nanoTime() - started < budget) {
+			running = layout.step();
+			iterations++;
+
+			if (System.nanoTime() - lastFrame >= TimeUnit.MILLISECONDS.toNanos(frameInterval)) {
+				publish();
+				lastFrame = System.nanoTime();
+			}//end if
+		}//end while
+
+		publish();
+		if (!running) {
+			layout.finish();
+			done = true;
+		}//end if
+	}
+
+	/* Copies the positions into the back buffer and swaps it to the front */
+	private void publish() {
+		System.arraycopy(graph.x, 0, backX, 0, backX.length);
+		System.arraycopy(graph.y, 0, backY, 0, backY.length);
+		final VersionedQuadTree<Vertex> index = this.index;
+		if (index != null)
+			index.publish(index(backX, backY));
+
+		synchronized (lock) {
+			double[] swap = frontX;
+			frontX = backX;
+			backX = swap;
+			swap = frontY;
+			frontY = backY;
+			backY = swap;
+			frame++;
+		}//end synchronized
+
+		final Runnable listener = frameListener;
+		if (listener != null)
+			listener.run();
+	}
+
+	/* A tree of the vertices at (x, y), with bounds just around them */
+	private QuadTree<Vertex> index(final double[] x, final double[] y) {
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < x.length; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}//end for
+		if (x.length == 0)
+			minX = minY = maxX = maxY = 0;
+
+		// the upper bounds are exclusive
+		return new QuadTree<Vertex>(minX, minY, maxX + 1, maxY + 1, x, y, Arrays.asList(graph.vertices));
+	}
+}
@@ -0,0 +1,86 @@
+package graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the vertex positions for cut-off repulsion.
+ * With square cells as wide as the cut-off distance, every vertex
+ * within the cut-off of a point lies in the point's own cell or one
+ * of the eight around it, so a repulsion pass only has to look at
+ * those nine cells instead of at every vertex.
+ * <p>
+ * Cells are hashed into a table of about twice as many buckets as
+ * there are vertices, so the memory used does not depend on how far
+ * apart the vertices are. Vertices in the same bucket are chained
+ * through next[]; a bucket may hold vertices of other cells, so
+ * callers check inCell() for each vertex returned.
+ * <p>
+ * build() reuses the arrays of the previous build when they are big
+ * enough. The grid is not changed by queries, so once built it can be
+ * read from any number of threads.
+ *
+ * @author Kirsty Williams
+ */
+public class RepulsionGrid {
+	private final double cellSize;
+	private int[] table = new int[0];
+	private int[] next = new int[0];
+	private int[] cellX = new int[0];
+	private int[] cellY = new int[0];
+	private int mask;
+
+	public RepulsionGrid(final double cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Places vertices 0..n-1 into their cells.
+	 */
+	public final void build(final double[] x, final double[] y, final int n) {
+		int buckets = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1;
+		if (table.length != buckets)
+			table = new int[buckets];
+		mask = buckets - 1;
+		Arrays.fill(table, -1);
+
+		if (next.length < n) {
+			next = new int[n];
+			cellX = new int[n];
+			cellY = new int[n];
+		}//end if
+
+		for (int i = 0; i < n; i++) {
+			cellX[i] = cellOf(x[i]);
+			cellY[i] = cellOf(y[i]);
+			final int h = hash(cellX[i], cellY[i]);
+			next[i] = table[h];
+			table[h] = i;
+		}//end for
+	}
+
+	public final int cellOf(final double coord) {
+		return (int) Math.floor(coord / cellSize);
+	}
+
+	/**
+	 * First vertex in the bucket of cell (cx, cy), or -1.
+	 */
+	public final int first(final int cx, final int cy) {
+		return table[hash(cx, cy)];
+	}
+
+	/**
+	 * Vertex after i in its bucket, or -1.
+	 */
+	public final int next(final int i) {
+		return next[i];
+	}
+
+	public final boolean inCell(final int i, final int cx, final int cy) {
+		return cellX[i] == cx && cellY[i] == cy;
+	}
+
+	private int hash(final int cx, final int cy) {
+		return ((cx * 73856093) ^ (cy * 19349663)) & mask;
+	}
+}
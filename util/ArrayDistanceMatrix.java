@@ -0,0 +1,44 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * DistanceMatrix held in one float array on the heap, for graphs small
+ * enough that n * n floats fit comfortably; use MappedDistanceMatrix
+ * for anything larger. Every pair starts UNREACHABLE.
+ *
+ * @author Kirsty Williams
+ */
+public class ArrayDistanceMatrix implements DistanceMatrix {
+	private final int n;
+	private final float[] distance;
+
+	public ArrayDistanceMatrix(int n) {
+		if ((long) n * n > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("A " + n + " x " + n
+					+ " matrix does not fit in an array; use a MappedDistanceMatrix");
+		this.n = n;
+		this.distance = new float[n * n];
+		Arrays.fill(distance, UNREACHABLE);
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public float get(int i, int j) {
+		return distance[i * n + j];
+	}
+
+	public void set(int i, int j, float d) {
+		distance[i * n + j] = d;
+	}
+
+	public void getRow(int i, float[] row) {
+		System.arraycopy(distance, i * n, row, 0, n);
+	}
+
+	public void setRow(int i, float[] row) {
+		System.arraycopy(row, 0, distance, i * n, n);
+	}
+}
@@ -0,0 +1,30 @@
+package utils;
+
+/**
+ * Square matrix of shortest path distances between vertices indexed
+ * 0..size()-1, with UNREACHABLE for pairs that have no path.
+ * <p>
+ * Rows may be written from several threads at once, as long as no two
+ * threads write the same row.
+ *
+ * @author Kirsty Williams
+ */
+public interface DistanceMatrix {
+	public static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+	public int size();
+
+	public float get(int i, int j);
+
+	public void set(int i, int j, float distance);
+
+	/**
+	 * Copies row i into row, which must have room for size() values.
+	 */
+	public void getRow(int i, float[] row);
+
+	/**
+	 * Overwrites row i with the first size() values of row.
+	 */
+	public void setRow(int i, float[] row);
+}
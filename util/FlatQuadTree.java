@@ -0,0 +1,438 @@
+package utils;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Array backed alternative to QuadTree for indexes that are rebuilt
+ * over and over, such as once per layout iteration.
+ * <p>
+ * Nodes and points are stored as structs of arrays: node n has bounds
+ * minX[n]..maxY[n], its four children start at child[n] (or -1 for a
+ * leaf) in the order SW, NW, SE, NE, and a leaf's points form a chain
+ * head[n], next[head[n]], ... ending in -1. Each point carries an int
+ * id chosen by the caller, typically an index into its own arrays.
+ * Mass and the summed coordinates of every node are kept up to date
+ * as points are put or removed, as in QuadNode.
+ * <p>
+ * A leaf holds up to leafCapacity points, 1 by default as in QuadNode,
+ * and is divided when one more arrives, unless every point in it is at
+ * the same location. Larger leaves give fewer nodes and shorter walks,
+ * at the cost of testing every point of a leaf that a query reaches.
+ * Below maxDepth, MAX_DEPTH by default, leaves are no longer divided,
+ * so near coincident points cannot drive the depth up without limit.
+ * <p>
+ * reset() empties the tree but keeps every array, so once the arrays
+ * have grown to fit, rebuilding the tree allocates nothing. Queries
+ * share one traversal stack, so a tree must not be queried from more
+ * than one thread at a time.
+ */
+public class FlatQuadTree {
+	public static final int MAX_DEPTH = 32;
+
+	private final int leafCapacity;
+	private final int maxDepth;
+
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+	private int[] child;
+	private int[] head;
+	private int[] depth;
+	private int[] mass;
+	private double[] sumX;
+	private double[] sumY;
+	private int numNodes;
+
+	private double[] px;
+	private double[] py;
+	private int[] next;
+	private int[] id;
+	private int numPoints;
+	private int numRemoved;
+
+	private int[] stack = new int[64];
+
+	/**
+	 * Creates an empty tree with room for the given number of points
+	 * before any array has to grow, whose leaves hold up to leafCapacity
+	 * points and are not divided below maxDepth.
+	 */
+	public FlatQuadTree(double minX, double minY, double maxX, double maxY, int capacity, int leafCapacity, int maxDepth) {
+		if (leafCapacity < 1) throw new IllegalArgumentException("leafCapacity must be at least 1: " + leafCapacity);
+		this.leafCapacity = leafCapacity;
+		this.maxDepth = maxDepth;
+		capacity = Math.max(capacity, 1);
+		allocateNodes(capacity * 2);
+		allocatePoints(capacity);
+		reset(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Creates an empty tree with room for the given number of points
+	 * before any array has to grow.
+	 */
+	public FlatQuadTree(double minX, double minY, double maxX, double maxY, int capacity) {
+		this(minX, minY, maxX, maxY, capacity, 1, MAX_DEPTH);
+	}
+
+	public FlatQuadTree(double minX, double minY, double maxX, double maxY) {
+		this(minX, minY, maxX, maxY, 16);
+	}
+
+	/**
+	 * Empties the tree and gives it new bounds, keeping the storage.
+	 */
+	public void reset(double minX, double minY, double maxX, double maxY) {
+		this.numNodes = 0;
+		this.numPoints = 0;
+		this.numRemoved = 0;
+		newNode(Math.min(minX, maxX), Math.min(minY, maxY), Math.max(minX, maxX), Math.max(minY, maxY), 0);
+	}
+
+	/**
+	 * Adds a point with the given id at (x,y).
+	 */
+	public void put(double x, double y, int value) {
+		if (this.numPoints == this.px.length) allocatePoints(this.numPoints * 2);
+		int p = this.numPoints++;
+		this.px[p] = x;
+		this.py[p] = y;
+		this.id[p] = value;
+
+		int n = 0;
+		while (true) {
+			this.mass[n]++;
+			this.sumX[n] += x;
+			this.sumY[n] += y;
+
+			if (this.child[n] >= 0) {
+				n = getChild(n, x, y);
+				continue;
+			}
+
+			//mass already counts p
+			if (this.mass[n] <= this.leafCapacity || this.depth[n] >= this.maxDepth || isAt(n, x, y)) {
+				this.next[p] = this.head[n];
+				this.head[n] = p;
+				return;
+			}
+
+			divide(n);
+			n = getChild(n, x, y);
+		}
+	}
+
+	/**
+	 * Takes out the point with the given id at (x,y), where it was put,
+	 * and returns whether there was one. Only the nodes on the way down
+	 * to its leaf are touched. Nodes left empty keep their children, and
+	 * the point's storage is not reused, until the next reset(); a tree
+	 * that loses many points should be reset and filled again.
+	 */
+	public boolean remove(double x, double y, int value) {
+		int n = 0;
+		int top = 0;
+		while (this.child[n] >= 0) {
+			push(top++, n);
+			n = getChild(n, x, y);
+		}
+
+		int previous = -1;
+		int p = this.head[n];
+		while (p >= 0 && (this.id[p] != value || this.px[p] != x || this.py[p] != y)) {
+			previous = p;
+			p = this.next[p];
+		}
+		if (p < 0) return false;
+
+		if (previous < 0) this.head[n] = this.next[p];
+		else this.next[previous] = this.next[p];
+		this.numRemoved++;
+
+		push(top++, n);
+		while (top > 0) {
+			n = this.stack[--top];
+			this.mass[n]--;
+			this.sumX[n] -= x;
+			this.sumY[n] -= y;
+			if (this.mass[n] == 0) {
+				//no rounding error left behind in an empty node
+				this.sumX[n] = 0;
+				this.sumY[n] = 0;
+			}
+		}
+		return true;
+	}
+
+	private void divide(int n) {
+		if (this.numNodes + 4 > this.minX.length) allocateNodes(this.minX.length * 2);
+
+		double cx = (this.minX[n] + this.maxX[n]) / 2;
+		double cy = (this.minY[n] + this.maxY[n]) / 2;
+		int d = this.depth[n] + 1;
+		int first = newNode(this.minX[n], this.minY[n], cx, cy, d); //SW
+		newNode(this.minX[n], cy, cx, this.maxY[n], d); //NW
+		newNode(cx, this.minY[n], this.maxX[n], cy, d); //SE
+		newNode(cx, cy, this.maxX[n], this.maxY[n], d); //NE
+		this.child[n] = first;
+
+		//the chain is at most leafCapacity points, or all at one location,
+		//so no child needs dividing in turn
+		int p = this.head[n];
+		this.head[n] = -1;
+		while (p >= 0) {
+			int following = this.next[p];
+			int c = getChild(n, this.px[p], this.py[p]);
+			this.next[p] = this.head[c];
+			this.head[c] = p;
+			this.mass[c]++;
+			this.sumX[c] += this.px[p];
+			this.sumY[c] += this.py[p];
+			p = following;
+		}
+	}
+
+	/** whether every point in the chain of leaf n is at (x,y) */
+	private boolean isAt(int n, double x, double y) {
+		for (int p = this.head[n]; p >= 0; p = this.next[p]) {
+			if (this.px[p] != x || this.py[p] != y) return false;
+		}
+		return true;
+	}
+
+	private int newNode(double minX, double minY, double maxX, double maxY, int depth) {
+		int n = this.numNodes++;
+		this.minX[n] = minX;
+		this.minY[n] = minY;
+		this.maxX[n] = maxX;
+		this.maxY[n] = maxY;
+		this.depth[n] = depth;
+		this.child[n] = -1;
+		this.head[n] = -1;
+		this.mass[n] = 0;
+		this.sumX[n] = 0;
+		this.sumY[n] = 0;
+		return n;
+	}
+
+	private int getChild(int n, double x, double y) {
+		int c = this.child[n];
+		if (x >= (this.minX[n] + this.maxX[n]) / 2) c += 2;
+		if (y >= (this.minY[n] + this.maxY[n]) / 2) c += 1;
+		return c;
+	}
+
+	private void allocateNodes(int size) {
+		this.minX = grow(this.minX, size);
+		this.minY = grow(this.minY, size);
+		this.maxX = grow(this.maxX, size);
+		this.maxY = grow(this.maxY, size);
+		this.sumX = grow(this.sumX, size);
+		this.sumY = grow(this.sumY, size);
+		this.child = grow(this.child, size);
+		this.head = grow(this.head, size);
+		this.depth = grow(this.depth, size);
+		this.mass = grow(this.mass, size);
+	}
+
+	private void allocatePoints(int size) {
+		this.px = grow(this.px, size);
+		this.py = grow(this.py, size);
+		this.next = grow(this.next, size);
+		this.id = grow(this.id, size);
+	}
+
+	private static double[] grow(double[] a, int size) {
+		return a == null ? new double[size] : Arrays.copyOf(a, size);
+	}
+
+	private static int[] grow(int[] a, int size) {
+		return a == null ? new int[size] : Arrays.copyOf(a, size);
+	}
+
+	private void push(int top, int n) {
+		if (top >= this.stack.length) this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+		this.stack[top] = n;
+	}
+
+	/** Distance from (x,y) to the bounds of node n, 0 if inside */
+	private double calcDistance(int n, double x, double y) {
+		double dx = 0;
+		double dy = 0;
+		if (x < this.minX[n]) dx = this.minX[n] - x;
+		else if (x > this.maxX[n]) dx = x - this.maxX[n];
+		if (y < this.minY[n]) dy = this.minY[n] - y;
+		else if (y > this.maxY[n]) dy = y - this.maxY[n];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Gets the id of the point closest to (x,y), or -1 if the tree is
+	 * empty.
+	 */
+	public int get(double x, double y) {
+		int best = -1;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		int top = 0;
+		push(top++, 0);
+		while (top > 0) {
+			int n = this.stack[--top];
+			if (this.mass[n] == 0 || calcDistance(n, x, y) >= bestDistance) continue;
+
+			int c = this.child[n];
+			if (c >= 0) {
+				//the child holding (x,y) goes on top so it is searched first
+				int nearest = getChild(n, x, y);
+				for (int i = c; i < c + 4; i++) {
+					if (i != nearest) push(top++, i);
+				}
+				push(top++, nearest);
+				continue;
+			}
+			for (int p = this.head[n]; p >= 0; p = this.next[p]) {
+				double dx = this.px[p] - x;
+				double dy = this.py[p] - y;
+				double distance = Math.sqrt(dx * dx + dy * dy);
+				if (distance < bestDistance) {
+					bestDistance = distance;
+					best = this.id[p];
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds the ids of all points within maxDistance of (x,y) to values.
+	 */
+	public TIntArrayList get(double x, double y, double maxDistance, TIntArrayList values) {
+		int top = 0;
+		push(top++, 0);
+		while (top > 0) {
+			int n = this.stack[--top];
+			if (this.mass[n] == 0 || calcDistance(n, x, y) > maxDistance) continue;
+
+			int c = this.child[n];
+			if (c >= 0) {
+				for (int i = c; i < c + 4; i++) push(top++, i);
+				continue;
+			}
+			for (int p = this.head[n]; p >= 0; p = this.next[p]) {
+				double dx = this.px[p] - x;
+				double dy = this.py[p] - y;
+				if (Math.sqrt(dx * dx + dy * dy) <= maxDistance) values.add(this.id[p]);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Adds the ids of all points inside the specified area to values.
+	 */
+	public TIntArrayList get(double minX, double minY, double maxX, double maxY, TIntArrayList values) {
+		int top = 0;
+		push(top++, 0);
+		while (top > 0) {
+			int n = this.stack[--top];
+			if (this.mass[n] == 0
+					|| this.maxX[n] < minX || this.minX[n] >= maxX
+					|| this.maxY[n] < minY || this.minY[n] >= maxY) continue;
+
+			int c = this.child[n];
+			if (c >= 0) {
+				for (int i = c; i < c + 4; i++) push(top++, i);
+				continue;
+			}
+			for (int p = this.head[n]; p >= 0; p = this.next[p]) {
+				if (this.px[p] >= minX && this.py[p] >= minY && this.px[p] < maxX && this.py[p] < maxY)
+					values.add(this.id[p]);
+			}
+		}
+		return values;
+	}
+
+	/** number of points in the tree, not counting those removed */
+	public int size() {
+		return this.numPoints - this.numRemoved;
+	}
+
+	/** number of points removed since the last reset() */
+	public int getNumRemoved() {
+		return this.numRemoved;
+	}
+
+	public int getNumNodes() {
+		return this.numNodes;
+	}
+
+	public int getLeafCapacity() {
+		return this.leafCapacity;
+	}
+
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	/** index of the root node */
+	public int getRoot() {
+		return 0;
+	}
+
+	/** index of the first of the four children of node n, or -1 for a leaf */
+	public int getChild(int n) {
+		return this.child[n];
+	}
+
+	public int getMass(int n) {
+		return this.mass[n];
+	}
+
+	public double getCOMX(int n) {
+		return this.sumX[n] / this.mass[n];
+	}
+
+	public double getCOMY(int n) {
+		return this.sumY[n] / this.mass[n];
+	}
+
+	public double getMinX(int n) {
+		return this.minX[n];
+	}
+
+	public double getMinY(int n) {
+		return this.minY[n];
+	}
+
+	public double getMaxX(int n) {
+		return this.maxX[n];
+	}
+
+	public double getMaxY(int n) {
+		return this.maxY[n];
+	}
+
+	/** first point in the chain of leaf n, or -1 */
+	public int getFirstPoint(int n) {
+		return this.head[n];
+	}
+
+	/** point after p in its leaf's chain, or -1 */
+	public int getNextPoint(int p) {
+		return this.next[p];
+	}
+
+	public double getX(int p) {
+		return this.px[p];
+	}
+
+	public double getY(int p) {
+		return this.py[p];
+	}
+
+	public int getId(int p) {
+		return this.id[p];
+	}
+}
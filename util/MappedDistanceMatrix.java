@@ -0,0 +1,265 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * DistanceMatrix stored in a memory-mapped file, so that it lives off
+ * the heap, can be larger than memory and can be opened again later.
+ * <p>
+ * The file is a HEADER_SIZE byte header (magic number, version,
+ * encoding, n) followed by the n rows, each n cells of the encoding's
+ * width. A single mapping is limited to 2GB, so the rows are mapped in
+ * chunks of whole rows of up to CHUNK_SIZE bytes.
+ * <p>
+ * Hop counts on unweighted graphs fit in UINT8 or UINT16 cells, a
+ * quarter or half the size of FLOAT. The cells are stored so that a
+ * cell of zero bytes reads UNREACHABLE: hop counts are stored plus one,
+ * and floats with the bits of infinity flipped. A new file therefore
+ * starts with every pair unreachable without being written.
+ * <p>
+ * The file stays mapped until the matrix is garbage collected, even
+ * after close().
+ *
+ * @author Kirsty Williams
+ */
+public class MappedDistanceMatrix implements DistanceMatrix, Closeable {
+	public static final int HEADER_SIZE = 16;
+	public static final long CHUNK_SIZE = 1L << 30;
+	private static final int MAGIC = 0x44495354; // "DIST"
+	private static final int VERSION = 1;
+	private static final int INFINITY_BITS = Float.floatToRawIntBits(UNREACHABLE);
+
+	/**
+	 * How a distance is stored in a cell.
+	 */
+	public enum Encoding {
+		/** hop counts 0..254 */
+		UINT8(1, 0xff),
+		/** hop counts 0..65534 */
+		UINT16(2, 0xffff),
+		/** any distance */
+		FLOAT(4, 0);
+
+		private final int width;
+		private final int max;
+
+		private Encoding(int width, int max) {
+			this.width = width;
+			this.max = max;
+		}
+
+		/** bytes per cell */
+		public int getWidth() {
+			return width;
+		}
+
+		/** the cell for distance d; 0 is UNREACHABLE */
+		final int encode(float d) {
+			if (this == FLOAT)
+				return Float.floatToRawIntBits(d) ^ INFINITY_BITS;
+			if (d == UNREACHABLE)
+				return 0;
+
+			final int hops = (int) d;
+			if (hops != d || hops < 0 || hops >= max)
+				throw new IllegalArgumentException("Distance " + d + " cannot be stored as " + this);
+			return hops + 1;
+		}
+
+		final float decode(int cell) {
+			if (this == FLOAT)
+				return Float.intBitsToFloat(cell ^ INFINITY_BITS);
+			return cell == 0 ? UNREACHABLE : cell - 1;
+		}
+	}
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final Encoding encoding;
+	private final int n;
+	private final int rowBytes;
+	private final int rowsPerChunk;
+	private final MappedByteBuffer[] chunks;
+	private final boolean writable;
+
+	/**
+	 * Creates a file for an n x n matrix, replacing any file already
+	 * there, with every pair unreachable.
+	 */
+	public static MappedDistanceMatrix create(File file, int n, Encoding encoding) throws IOException {
+		if (n < 0)
+			throw new IllegalArgumentException("Negative size: " + n);
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER_SIZE + (long) n * n * encoding.getWidth());
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(encoding.ordinal());
+			raf.writeInt(n);
+			return new MappedDistanceMatrix(file, raf, n, encoding, true);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a matrix written earlier by create().
+	 *
+	 * @param writable - map the file for writing as well as reading
+	 */
+	public static MappedDistanceMatrix open(File file, boolean writable) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+		try {
+			if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC)
+				throw new IOException("Not a distance matrix: " + file);
+			if (raf.readInt() != VERSION)
+				throw new IOException("Unsupported distance matrix version: " + file);
+
+			final int encoding = raf.readInt();
+			final int n = raf.readInt();
+			if (encoding < 0 || encoding >= Encoding.values().length || n < 0)
+				throw new IOException("Corrupt distance matrix header: " + file);
+			if (raf.length() < HEADER_SIZE + (long) n * n * Encoding.values()[encoding].getWidth())
+				throw new IOException("Truncated distance matrix: " + file);
+
+			return new MappedDistanceMatrix(file, raf, n, Encoding.values()[encoding], writable);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	private MappedDistanceMatrix(File file, RandomAccessFile raf, int n, Encoding encoding, boolean writable)
+			throws IOException {
+		if ((long) n * encoding.getWidth() > CHUNK_SIZE)
+			throw new IllegalArgumentException("A row of " + n + " cells is larger than a chunk");
+
+		this.file = file;
+		this.raf = raf;
+		this.channel = raf.getChannel();
+		this.encoding = encoding;
+		this.writable = writable;
+		this.n = n;
+		this.rowBytes = n * encoding.getWidth();
+		this.rowsPerChunk = rowBytes == 0 ? 1 : (int) (CHUNK_SIZE / rowBytes);
+
+		final int numChunks = (n + rowsPerChunk - 1) / rowsPerChunk;
+		this.chunks = new MappedByteBuffer[numChunks];
+		final FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		for (int c = 0; c < numChunks; c++) {
+			final long rows = Math.min(rowsPerChunk, n - (long) c * rowsPerChunk);
+			chunks[c] = channel.map(mode, HEADER_SIZE + (long) c * rowsPerChunk * rowBytes, rows * rowBytes);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public float get(int i, int j) {
+		final ByteBuffer chunk = chunks[i / rowsPerChunk];
+		final int at = (i % rowsPerChunk) * rowBytes + j * encoding.getWidth();
+		switch (encoding) {
+		case UINT8:
+			return encoding.decode(chunk.get(at) & 0xff);
+		case UINT16:
+			return encoding.decode(chunk.getShort(at) & 0xffff);
+		default:
+			return encoding.decode(chunk.getInt(at));
+		}
+	}
+
+	public void set(int i, int j, float distance) {
+		final ByteBuffer chunk = chunks[i / rowsPerChunk];
+		final int at = (i % rowsPerChunk) * rowBytes + j * encoding.getWidth();
+		final int cell = encoding.encode(distance);
+		switch (encoding) {
+		case UINT8:
+			chunk.put(at, (byte) cell);
+			break;
+		case UINT16:
+			chunk.putShort(at, (short) cell);
+			break;
+		default:
+			chunk.putInt(at, cell);
+		}
+	}
+
+	public void getRow(int i, float[] row) {
+		final ByteBuffer chunk = chunks[i / rowsPerChunk];
+		int at = (i % rowsPerChunk) * rowBytes;
+		final int width = encoding.getWidth();
+		for (int j = 0; j < n; j++, at += width) {
+			switch (encoding) {
+			case UINT8:
+				row[j] = encoding.decode(chunk.get(at) & 0xff);
+				break;
+			case UINT16:
+				row[j] = encoding.decode(chunk.getShort(at) & 0xffff);
+				break;
+			default:
+				row[j] = encoding.decode(chunk.getInt(at));
+			}
+		}
+	}
+
+	public void setRow(int i, float[] row) {
+		final ByteBuffer chunk = chunks[i / rowsPerChunk];
+		int at = (i % rowsPerChunk) * rowBytes;
+		final int width = encoding.getWidth();
+		for (int j = 0; j < n; j++, at += width) {
+			final int cell = encoding.encode(row[j]);
+			switch (encoding) {
+			case UINT8:
+				chunk.put(at, (byte) cell);
+				break;
+			case UINT16:
+				chunk.putShort(at, (short) cell);
+				break;
+			default:
+				chunk.putInt(at, cell);
+			}
+		}
+	}
+
+	/**
+	 * Writes any changes through to the file.
+	 */
+	public void flush() {
+		for (MappedByteBuffer chunk : chunks)
+			chunk.force();
+	}
+
+	/**
+	 * Flushes the matrix if it is writable and closes the file.
+	 */
+	public void close() throws IOException {
+		if (writable)
+			flush();
+		raf.close();
+	}
+}
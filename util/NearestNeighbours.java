@@ -0,0 +1,131 @@
+package utils;
+
+/**
+ * Reusable result buffer for k-nearest-neighbour queries on a
+ * QuadTree. It holds up to k values with their locations and distances
+ * in a bounded max-heap, so a query can reject anything further away
+ * than the k-th nearest found so far without allocating. When a query
+ * returns, the buffer is sorted nearest first.
+ * <p>
+ * A buffer can be cleared and reused for any number of queries.
+ */
+public class NearestNeighbours<T> {
+	private final int k;
+	private final double[] distance;
+	private final double[] x;
+	private final double[] y;
+	private final Object[] values;
+	private int size = 0;
+
+	public NearestNeighbours(int k) {
+		if (k < 1) throw new IllegalArgumentException("k must be at least 1: " + k);
+		this.k = k;
+		this.distance = new double[k];
+		this.x = new double[k];
+		this.y = new double[k];
+		this.values = new Object[k];
+	}
+
+	public void clear() {
+		for (int i = 0; i < this.size; i++) this.values[i] = null;
+		this.size = 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/** the most neighbours the buffer holds */
+	public int capacity() {
+		return this.k;
+	}
+
+	/**
+	 * Distance a candidate has to be under to be kept: infinite until
+	 * the buffer is full, then the distance of the furthest value held.
+	 * Only meaningful while a query is filling the buffer.
+	 */
+	double bound() {
+		return this.size < this.k ? Double.POSITIVE_INFINITY : this.distance[0];
+	}
+
+	/**
+	 * Keeps the value if it is nearer than the furthest held, dropping
+	 * that one when the buffer is full.
+	 */
+	void offer(double distance, double x, double y, T value) {
+		if (this.size < this.k) {
+			int i = this.size++;
+			//sift up
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (this.distance[parent] >= distance) break;
+				move(parent, i);
+				i = parent;
+			}
+			set(i, distance, x, y, value);
+		} else if (distance < this.distance[0]) {
+			siftDown(0, this.size, distance, x, y, value);
+		}
+	}
+
+	/**
+	 * Puts the values in order of distance, nearest first. The buffer
+	 * must be cleared before it is filled again.
+	 */
+	void sort() {
+		for (int end = this.size - 1; end > 0; end--) {
+			double d = this.distance[end];
+			double px = this.x[end];
+			double py = this.y[end];
+			Object value = this.values[end];
+			move(0, end);
+			siftDown(0, end, d, px, py, value);
+		}
+	}
+
+	/** places the entry at i, or below it, within a heap of the given size */
+	private void siftDown(int i, int size, double distance, double x, double y, Object value) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) break;
+			if (child + 1 < size && this.distance[child + 1] > this.distance[child]) child++;
+			if (this.distance[child] <= distance) break;
+			move(child, i);
+			i = child;
+		}
+		set(i, distance, x, y, value);
+	}
+
+	private void move(int from, int to) {
+		this.distance[to] = this.distance[from];
+		this.x[to] = this.x[from];
+		this.y[to] = this.y[from];
+		this.values[to] = this.values[from];
+	}
+
+	private void set(int i, double distance, double x, double y, Object value) {
+		this.distance[i] = distance;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.values[i] = value;
+	}
+
+	/** the i-th nearest value, from 0 */
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		return (T) this.values[i];
+	}
+
+	public double getDistance(int i) {
+		return this.distance[i];
+	}
+
+	public double getX(int i) {
+		return this.x[i];
+	}
+
+	public double getY(int i) {
+		return this.y[i];
+	}
+}
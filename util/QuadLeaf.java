@@ -1,16 +1,25 @@
 package utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class QuadLeaf<T> {
 	public final double x;
 	public final double y;
-	public final ArrayList<T> values;
+	final ArrayList<T> values; //changed only by QuadNode, through its QuadTree
+	private final List<T> view;
 
 	public QuadLeaf(double x, double y, T value) {
 		this.x = x;
 		this.y = y;
 		this.values = new ArrayList<T>(1);
 		this.values.add(value);
+		this.view = Collections.unmodifiableList(this.values);
+	}
+
+	/** the values at (x,y), read only */
+	public List<T> getValues() {
+		return view;
 	}
 }
\ No newline at end of file
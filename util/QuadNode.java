@@ -1,19 +1,30 @@
 package utils;
 
 import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Node of a QuadTree. Nodes are only changed through their QuadTree,
+ * which refuses once it is frozen, so the mutators are package private
+ * and everything else can only read a node through its getters.
+ */
 public class QuadNode<T> {
 
-	public QuadLeaf<T> leaf = null;
+	/** levels of the tree a Morton code from mortonCode() describes */
+	static final int MORTON_LEVELS = 31;
 
-	public boolean hasChildren = false;
-	public int mass;
-	public double comX;
-	public double comY;
-	public QuadNode<T> NW = null;
-	public QuadNode<T> NE = null;
-	public QuadNode<T> SE = null;
-	public QuadNode<T> SW = null;
+	private QuadLeaf<T> leaf = null;
+
+	private boolean hasChildren = false;
+	private int mass;
+	private double comX;
+	private double comY;
+	private double sumX; //x coords of the values below this node, summed
+	private double sumY; //y coords of the values below this node, summed
+	private QuadNode<T> NW = null;
+	private QuadNode<T> NE = null;
+	private QuadNode<T> SE = null;
+	private QuadNode<T> SW = null;
 	private final Box bounds;
 
 	public QuadNode(double minX, double minY, double maxX, double maxY) {
@@ -23,32 +34,59 @@ public class QuadNode<T> {
 		this.comY =0;
 	}
 	
-	public void setCOM(double comX, double comY){
+	void setCOM(double comX, double comY){
 		this.comX = comX;
 		this.comY = comY;
 	}
 
-	public boolean put(QuadLeaf<T> leaf) {
-		mass++;
-		if (this.hasChildren) return getChild(leaf.x, leaf.y).put(leaf);
-		if (this.leaf == null) {
+	boolean put(QuadLeaf<T> leaf) {
+		return insert(leaf) > 0;
+	}
+
+	/**
+	 * Inserts the values of the leaf below this node and returns how
+	 * many were new. The mass and centre of mass of every node on the
+	 * way down are updated as the recursion unwinds, so they are
+	 * always current without a separate pass over the tree.
+	 */
+	private int insert(QuadLeaf<T> leaf) {
+		int added = 0;
+		if (this.hasChildren) {
+			added = getChild(leaf.x, leaf.y).insert(leaf);
+		} else if (this.leaf == null) {
 			this.leaf = leaf;
-			return true;
-		}
-		if (this.leaf.x == leaf.x && this.leaf.y == leaf.y) {
-			boolean changed = false;
+			added = leaf.values.size();
+		} else if (this.leaf.x == leaf.x && this.leaf.y == leaf.y) {
 			for (T value : leaf.values) {
-				if (!this.leaf.values.contains(value)) {
-					changed = this.leaf.values.add(value) || changed;
+				if (!this.leaf.values.contains(value) && this.leaf.values.add(value)) {
+					added++;
 				}
 			}
-			return changed;
+		} else {
+			this.divide();
+			added = getChild(leaf.x, leaf.y).insert(leaf);
 		}
-		this.divide();
-		return getChild(leaf.x, leaf.y).put(leaf);
+		addMass(leaf.x, leaf.y, added);
+		return added;
 	}
 
-	public boolean put(double x, double y, T value) {
+	private void addMass(double x, double y, int count) {
+		if (count == 0) return;
+		this.mass += count;
+		if (this.mass == 0) {
+			this.sumX = 0;
+			this.sumY = 0;
+			this.comX = 0;
+			this.comY = 0;
+			return;
+		}
+		this.sumX += x * count;
+		this.sumY += y * count;
+		this.comX = this.sumX / this.mass;
+		this.comY = this.sumY / this.mass;
+	}
+
+	boolean put(double x, double y, T value) {
 		return put(new QuadLeaf<T>(x, y, value));
 	}
 	
@@ -56,13 +94,53 @@ public class QuadNode<T> {
 		return mass;
 	}
 
-	public boolean remove(double x, double y, T value) {
-		if (this.hasChildren) return getChild(x, y).remove(x, y, value);
+	public double getCOMX(){
+		return comX;
+	}
+
+	public double getCOMY(){
+		return comY;
+	}
+
+	public boolean hasChildren(){
+		return hasChildren;
+	}
+
+	/** the values of this node if it has no children, or null */
+	public QuadLeaf<T> getLeaf(){
+		return leaf;
+	}
+
+	public QuadNode<T> getNW(){
+		return NW;
+	}
+
+	public QuadNode<T> getNE(){
+		return NE;
+	}
+
+	public QuadNode<T> getSE(){
+		return SE;
+	}
+
+	public QuadNode<T> getSW(){
+		return SW;
+	}
+
+	boolean remove(double x, double y, T value) {
+		if (this.hasChildren) {
+			if (getChild(x, y).remove(x, y, value)) {
+				addMass(x, y, -1);
+				return true;
+			}
+			return false;
+		}
 		if (this.leaf != null && this.leaf.x == x && this.leaf.y == y) {
 			if (this.leaf.values.remove(value)) {
 				if (this.leaf.values.size() == 0) {
 					this.leaf = null;
 				}
+				addMass(x, y, -1);
 				return true;
 			}
 		}
@@ -73,7 +151,12 @@ public class QuadNode<T> {
 		return this.bounds;
 	}
 
-	public void clear() {
+	void clear() {
+		this.mass = 0;
+		this.sumX = 0;
+		this.sumY = 0;
+		this.comX = 0;
+		this.comY = 0;
 		if (this.hasChildren) {
 			this.NW.clear();
 			this.NE.clear();
@@ -157,6 +240,178 @@ public class QuadNode<T> {
 		return values;
 	}
 
+	/**
+	 * Offers the values below this node that may be among the nearest
+	 * to (x,y) to neighbours. The child holding (x,y) is searched first
+	 * so that the bound tightens early, and a child is skipped when its
+	 * bounds are further away than the current k-th nearest.
+	 */
+	public void get(double x, double y, NearestNeighbours<T> neighbours) {
+		if (this.hasChildren) {
+			QuadNode<T> bestChild = this.getChild(x, y);
+			bestChild.get(x, y, neighbours);
+			if (bestChild != this.NW && this.NW.bounds.calcDistance(x, y) < neighbours.bound()) {
+				this.NW.get(x, y, neighbours);
+			}
+			if (bestChild != this.NE && this.NE.bounds.calcDistance(x, y) < neighbours.bound()) {
+				this.NE.get(x, y, neighbours);
+			}
+			if (bestChild != this.SE && this.SE.bounds.calcDistance(x, y) < neighbours.bound()) {
+				this.SE.get(x, y, neighbours);
+			}
+			if (bestChild != this.SW && this.SW.bounds.calcDistance(x, y) < neighbours.bound()) {
+				this.SW.get(x, y, neighbours);
+			}
+			return;
+		}
+		if (this.leaf != null) {
+			double distance = Math.sqrt(
+					(this.leaf.x - x) * (this.leaf.x - x)
+					+ (this.leaf.y - y) * (this.leaf.y - y));
+			if (distance < neighbours.bound()) {
+				for (int i = 0; i < this.leaf.values.size(); i++) {
+					neighbours.offer(distance, this.leaf.x, this.leaf.y, this.leaf.values.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Batch form of get(x, y, neighbours): the queries listed in
+	 * queries[from..to) are answered in one walk of the tree, query q
+	 * being at (xs[q], ys[q]) and filling neighbours[q]. At each node
+	 * the queries for a child are moved to the front of the range and
+	 * passed down together, so the list is only ever permuted in place.
+	 * As in the single query, each query searches the child holding it
+	 * first, and the other children only while they are nearer than its
+	 * current k-th nearest.
+	 */
+	public void get(double[] xs, double[] ys, int[] queries, int from, int to, NearestNeighbours<T>[] neighbours) {
+		if (from == to) return;
+		if (this.hasChildren) {
+			this.SW.get(xs, ys, queries, from, partition(this.SW, true, xs, ys, queries, from, to, neighbours), neighbours);
+			this.NW.get(xs, ys, queries, from, partition(this.NW, true, xs, ys, queries, from, to, neighbours), neighbours);
+			this.SE.get(xs, ys, queries, from, partition(this.SE, true, xs, ys, queries, from, to, neighbours), neighbours);
+			this.NE.get(xs, ys, queries, from, partition(this.NE, true, xs, ys, queries, from, to, neighbours), neighbours);
+			this.NW.get(xs, ys, queries, from, partition(this.NW, false, xs, ys, queries, from, to, neighbours), neighbours);
+			this.NE.get(xs, ys, queries, from, partition(this.NE, false, xs, ys, queries, from, to, neighbours), neighbours);
+			this.SE.get(xs, ys, queries, from, partition(this.SE, false, xs, ys, queries, from, to, neighbours), neighbours);
+			this.SW.get(xs, ys, queries, from, partition(this.SW, false, xs, ys, queries, from, to, neighbours), neighbours);
+			return;
+		}
+		if (this.leaf != null) {
+			for (int i = from; i < to; i++) {
+				int q = queries[i];
+				double distance = Math.sqrt(
+						(this.leaf.x - xs[q]) * (this.leaf.x - xs[q])
+						+ (this.leaf.y - ys[q]) * (this.leaf.y - ys[q]));
+				if (distance < neighbours[q].bound()) {
+					for (int j = 0; j < this.leaf.values.size(); j++) {
+						neighbours[q].offer(distance, this.leaf.x, this.leaf.y, this.leaf.values.get(j));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the queries child is to search to the front and returns the
+	 * end of them: with holding set, the queries that lie in child; without
+	 * it, those that lie elsewhere but are nearer to child than their
+	 * current k-th nearest.
+	 */
+	private int partition(QuadNode<T> child, boolean holding, double[] xs, double[] ys, int[] queries, int from, int to, NearestNeighbours<T>[] neighbours) {
+		int end = from;
+		for (int i = from; i < to; i++) {
+			int q = queries[i];
+			boolean inChild = this.getChild(xs[q], ys[q]) == child;
+			if (holding ? inChild : !inChild && child.bounds.calcDistance(xs[q], ys[q]) < neighbours[q].bound()) {
+				queries[i] = queries[end];
+				queries[end++] = q;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Executes executor on every object within maxDistance of (x,y).
+	 */
+	public int execute(double x, double y, double maxDistance, QuadTree.Executor<T> executor) {
+		int count = 0;
+		if (this.hasChildren) {
+			if (this.NW.bounds.calcDistance(x, y) <= maxDistance) {
+				count += this.NW.execute(x, y, maxDistance, executor);
+			}
+			if (this.NE.bounds.calcDistance(x, y) <= maxDistance) {
+				count += this.NE.execute(x, y, maxDistance, executor);
+			}
+			if (this.SE.bounds.calcDistance(x, y) <= maxDistance) {
+				count += this.SE.execute(x, y, maxDistance, executor);
+			}
+			if (this.SW.bounds.calcDistance(x, y) <= maxDistance) {
+				count += this.SW.execute(x, y, maxDistance, executor);
+			}
+			return count;
+		}
+		if (this.leaf != null) {
+			double distance = Math.sqrt(
+					(this.leaf.x - x) * (this.leaf.x - x)
+					+ (this.leaf.y - y) * (this.leaf.y - y));
+			if (distance <= maxDistance) {
+				for (int i = 0; i < this.leaf.values.size(); i++) {
+					executor.execute(this.leaf.x, this.leaf.y, this.leaf.values.get(i));
+				}
+				count += this.leaf.values.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Batch form of execute(x, y, maxDistance, executor), answering the
+	 * queries in queries[from..to) in one walk of the tree as in the
+	 * batch nearest neighbour query.
+	 */
+	public int execute(double[] xs, double[] ys, int[] queries, int from, int to, double maxDistance, QuadTree.BatchExecutor<T> executor) {
+		int count = 0;
+		if (from == to) return count;
+		if (this.hasChildren) {
+			count += this.NW.execute(xs, ys, queries, from, partition(this.NW.bounds, xs, ys, queries, from, to, maxDistance), maxDistance, executor);
+			count += this.NE.execute(xs, ys, queries, from, partition(this.NE.bounds, xs, ys, queries, from, to, maxDistance), maxDistance, executor);
+			count += this.SE.execute(xs, ys, queries, from, partition(this.SE.bounds, xs, ys, queries, from, to, maxDistance), maxDistance, executor);
+			count += this.SW.execute(xs, ys, queries, from, partition(this.SW.bounds, xs, ys, queries, from, to, maxDistance), maxDistance, executor);
+			return count;
+		}
+		if (this.leaf != null) {
+			for (int i = from; i < to; i++) {
+				int q = queries[i];
+				double distance = Math.sqrt(
+						(this.leaf.x - xs[q]) * (this.leaf.x - xs[q])
+						+ (this.leaf.y - ys[q]) * (this.leaf.y - ys[q]));
+				if (distance <= maxDistance) {
+					for (int j = 0; j < this.leaf.values.size(); j++) {
+						executor.execute(q, this.leaf.x, this.leaf.y, this.leaf.values.get(j));
+					}
+					count += this.leaf.values.size();
+				}
+			}
+		}
+		return count;
+	}
+
+	/** moves the queries within maxDistance of bounds to the front, returns the end of them */
+	private static int partition(Box bounds, double[] xs, double[] ys, int[] queries, int from, int to, double maxDistance) {
+		int end = from;
+		for (int i = from; i < to; i++) {
+			int q = queries[i];
+			if (bounds.calcDistance(xs[q], ys[q]) <= maxDistance) {
+				queries[i] = queries[end];
+				queries[end++] = q;
+			}
+		}
+		return end;
+	}
+
 	public ArrayList<T> get(Box bounds, ArrayList<T> values) {
 		if (this.hasChildren) {
 			if (this.NW.bounds.intersects(bounds)) {
@@ -203,6 +458,24 @@ public class QuadNode<T> {
 		return count;
 	}
 
+	/**
+	 * Executes executor on every object below this node, SW, NW, SE, NE
+	 * first at each level, without testing any bounds.
+	 */
+	public int forEach(QuadTree.Executor<T> executor) {
+		if (this.hasChildren) {
+			return this.SW.forEach(executor) + this.NW.forEach(executor)
+					+ this.SE.forEach(executor) + this.NE.forEach(executor);
+		}
+		if (this.leaf == null) {
+			return 0;
+		}
+		for (int i = 0; i < this.leaf.values.size(); i++) {
+			executor.execute(this.leaf.x, this.leaf.y, this.leaf.values.get(i));
+		}
+		return this.leaf.values.size();
+	}
+
 	private void divide() {
 		this.NW = new QuadNode<T>(this.bounds.minX, this.bounds.centreY, this.bounds.centreX, this.bounds.maxY);
 		this.NE = new QuadNode<T>(this.bounds.centreX, this.bounds.centreY, this.bounds.maxX, this.bounds.maxY);
@@ -210,11 +483,98 @@ public class QuadNode<T> {
 		this.SW = new QuadNode<T>(this.bounds.minX, this.bounds.minY, this.bounds.centreX, this.bounds.centreY);
 		this.hasChildren = true;
 		if (this.leaf != null) {
-			getChild(this.leaf.x, this.leaf.y).put(this.leaf);
+			//already counted in the mass of this node
+			getChild(this.leaf.x, this.leaf.y).insert(this.leaf);
 			this.leaf = null;
 		}
 	}
 
+	/**
+	 * Morton (Z-order) code of (x,y) within bounds: two bits per level
+	 * for the child of each node on the way down from a node with these
+	 * bounds, most significant first, numbered SW, NW, SE, NE. The
+	 * centres are computed exactly as divide() computes them, so the
+	 * code agrees with getChild() on every level it covers.
+	 */
+	static long mortonCode(Box bounds, double x, double y) {
+		double minX = bounds.minX, minY = bounds.minY, maxX = bounds.maxX, maxY = bounds.maxY;
+		long code = 0;
+		for (int level = 0; level < MORTON_LEVELS; level++) {
+			double centreX = (minX + maxX) / 2;
+			double centreY = (minY + maxY) / 2;
+			int quadrant = 0;
+			if (x < centreX) { maxX = centreX; } else { minX = centreX; quadrant |= 2; }
+			if (y < centreY) { maxY = centreY; } else { minY = centreY; quadrant |= 1; }
+			code = (code << 2) | quadrant;
+		}
+		return code;
+	}
+
+	/**
+	 * Builds the subtree of this empty node from the points order[from..to),
+	 * point i being values.get(i) at (x[i], y[i]). The points must be sorted
+	 * by their Morton codes, codes[from..to), so that the points of each
+	 * child are a contiguous run. Each node is created once and its mass
+	 * and centre of mass summed from its children on the way back up,
+	 * rather than updated on every insert. Returns the number of values
+	 * added, which leaves out values repeated at one location as put does.
+	 */
+	int load(double[] x, double[] y, List<T> values, int[] order, long[] codes, int from, int to, int depth) {
+		double x0 = x[order[from]];
+		double y0 = y[order[from]];
+		boolean oneLocation = true;
+		for (int i = from + 1; i < to && oneLocation; i++) {
+			oneLocation = x[order[i]] == x0 && y[order[i]] == y0;
+		}
+		if (oneLocation) {
+			QuadLeaf<T> leaf = new QuadLeaf<T>(x0, y0, values.get(order[from]));
+			for (int i = from + 1; i < to; i++) {
+				T value = values.get(order[i]);
+				if (!leaf.values.contains(value)) { leaf.values.add(value); }
+			}
+			this.leaf = leaf;
+			addMass(x0, y0, leaf.values.size());
+			return leaf.values.size();
+		}
+		if (depth == MORTON_LEVELS) {
+			//closer together than the codes can tell apart
+			int added = 0;
+			for (int i = from; i < to; i++) {
+				if (put(x[order[i]], y[order[i]], values.get(order[i]))) { added++; }
+			}
+			return added;
+		}
+
+		this.divide();
+		int shift = 2 * (MORTON_LEVELS - 1 - depth);
+		int start = from;
+		for (int quadrant = 0; quadrant < 4; quadrant++) {
+			int end = start;
+			while (end < to && ((codes[end] >>> shift) & 3) == quadrant) { end++; }
+			if (end > start) {
+				QuadNode<T> child = getChild(quadrant);
+				child.load(x, y, values, order, codes, start, end, depth + 1);
+				this.mass += child.mass;
+				this.sumX += child.sumX;
+				this.sumY += child.sumY;
+			}
+			start = end;
+		}
+		this.comX = this.sumX / this.mass;
+		this.comY = this.sumY / this.mass;
+		return this.mass;
+	}
+
+	/** child by Morton quadrant: 0 SW, 1 NW, 2 SE, 3 NE */
+	private QuadNode<T> getChild(int quadrant) {
+		switch (quadrant) {
+		case 0: return this.SW;
+		case 1: return this.NW;
+		case 2: return this.SE;
+		default: return this.NE;
+		}
+	}
+
 	private QuadNode<T> getChild(double x, double y) {
 		if (this.hasChildren) {
 			if (x < this.bounds.centreX) {
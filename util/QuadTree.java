@@ -2,13 +2,16 @@ package utils;
 
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 public class QuadTree<T> {
 
-	public QuadNode<T> root = null;
+	private final QuadNode<T> root;
 	private int size = 0;
 	private AbstractCollection<T> values = null;
+	private boolean frozen = false;
 
 	/**
 	 * Creates an empty QuadTree with the bounds
@@ -17,11 +20,64 @@ public class QuadTree<T> {
 		this.root = new QuadNode<T>(minX, minY, maxX, maxY);
 	}
 
+	/**
+	 * Creates a QuadTree with the bounds holding values.get(i) at
+	 * (x[i], y[i]), built in one pass instead of by repeated put().
+	 * <p>
+	 * The points are sorted along a Morton (Z-order) curve taken from
+	 * the tree's own subdivision, so the points below any node are a
+	 * contiguous run of the sorted order. The tree is then built top
+	 * down by splitting runs, creating each node once and summing mass
+	 * and centre of mass from the children, with none of the repeated
+	 * descents and leaf moves of inserting one point at a time. The
+	 * resulting tree is the one the same points would give through put().
+	 */
+	public QuadTree(double minX, double minY, double maxX, double maxY, double[] x, double[] y, List<T> values) {
+		this(minX, minY, maxX, maxY);
+		int n = values.size();
+		if (n == 0) return;
+
+		long[] codes = new long[n];
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			codes[i] = QuadNode.mortonCode(this.root.getBounds(), x[i], y[i]);
+			order[i] = i;
+		}
+		sort(codes, order);
+		this.size = this.root.load(x, y, values, order, codes, 0, n, 0);
+	}
+
+	/** Radix sorts codes, which are not negative, permuting order alongside */
+	private static void sort(long[] codes, int[] order) {
+		int n = codes.length;
+		long[] codesBuffer = new long[n];
+		int[] orderBuffer = new int[n];
+		int[] counts = new int[1 << 16];
+		for (int shift = 0; shift < 64; shift += 16) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++) counts[(int) (codes[i] >>> shift) & 0xFFFF]++;
+			if (counts[(int) (codes[0] >>> shift) & 0xFFFF] == n) continue; //all the same digit
+			for (int d = 0, sum = 0; d < counts.length; d++) {
+				int c = counts[d];
+				counts[d] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < n; i++) {
+				int d = (int) (codes[i] >>> shift) & 0xFFFF;
+				codesBuffer[counts[d]] = codes[i];
+				orderBuffer[counts[d]++] = order[i];
+			}
+			System.arraycopy(codesBuffer, 0, codes, 0, n);
+			System.arraycopy(orderBuffer, 0, order, 0, n);
+		}
+	}
+
 	/**
 	 * Associates the specified value with the specified coords in this
 	 * QuadTree.
 	 */
 	public boolean put(double x, double y, T value) {
+		checkNotFrozen();
 		if (this.root.put(x, y, value)) {
 			increaseSize();
 			return true;
@@ -33,6 +89,7 @@ public class QuadTree<T> {
 	 * Removes the specified object from the specified location.
 	 */
 	public boolean remove(double x, double y, T value) {
+		checkNotFrozen();
 		if (this.root.remove(x, y, value)) {
 			decreaseSize();
 			return true;
@@ -42,10 +99,40 @@ public class QuadTree<T> {
 
 	/** Clear the QuadTree */
 	public void clear() {
+		checkNotFrozen();
 		this.root.clear();
 		this.size = 0;
 	}
 	
+	/**
+	 * Makes the tree read only: put, remove and clear throw from now on,
+	 * and the values() view is created now rather than on first use, so
+	 * that reading the tree writes nothing. A frozen tree that has been
+	 * safely published, as by VersionedQuadTree, can then be queried
+	 * from any number of threads. Nodes and leaves have no public
+	 * mutators, so nothing can change a frozen tree.
+	 */
+	public void freeze() {
+		values();
+		this.frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/**
+	 * The root node, to walk the tree. Nodes and leaves can only be
+	 * read; the tree is changed through put, remove and clear.
+	 */
+	public QuadNode<T> getRoot() {
+		return this.root;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen) throw new IllegalStateException("QuadTree is frozen");
+	}
+
 	private void increaseSize() { 
 		this.size++; this.values = null;
 	}
@@ -68,6 +155,46 @@ public class QuadTree<T> {
 		return this.root.get(x, y, distance, new ArrayList<T>());
 	}
 
+	/**
+	 * Adds all objects within a certain distance to values, which can be
+	 * reused from one query to the next.
+	 */
+	public ArrayList<T> get(double x, double y, double distance, ArrayList<T> values) {
+		return this.root.get(x, y, distance, values);
+	}
+
+	/**
+	 * Fills neighbours with the objects nearest to (x,y), as many as it
+	 * holds, sorted nearest first. Objects at the same location count
+	 * separately. Nothing is allocated, so the buffer can be reused for
+	 * any number of queries.
+	 */
+	public NearestNeighbours<T> get(double x, double y, NearestNeighbours<T> neighbours) {
+		neighbours.clear();
+		this.root.get(x, y, neighbours);
+		neighbours.sort();
+		return neighbours;
+	}
+
+	/**
+	 * Answers a nearest neighbour query for each point (xs[i], ys[i]) in
+	 * one walk of the tree, filling neighbours[i] as get(x, y, neighbours)
+	 * would. The buffers may have different capacities.
+	 */
+	public void get(double[] xs, double[] ys, NearestNeighbours<T>[] neighbours) {
+		int[] queries = new int[neighbours.length];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = i;
+			neighbours[i].clear();
+		}
+		if (queries.length > 0) {
+			this.root.get(xs, ys, queries, 0, queries.length, neighbours);
+		}
+		for (int i = 0; i < queries.length; i++) {
+			neighbours[i].sort();
+		}
+	}
+
 	/**
 	 * Gets all objects inside the specified boundary.
 	 */
@@ -99,6 +226,27 @@ public class QuadTree<T> {
 		return execute(new Box(minX, minY, maxX, maxY), executor);
 	}
 
+	/**
+	 * Executes executor on all objects within a certain distance of
+	 * (x,y), without collecting them.
+	 */
+	public int execute(double x, double y, double distance, Executor<T> executor) {
+		return this.root.execute(x, y, distance, executor);
+	}
+
+	/**
+	 * Executes executor on all objects within a certain distance of each
+	 * of the points (xs[i], ys[i]), answering them all in one walk of the
+	 * tree. Returns the number of (point, object) pairs found.
+	 */
+	public int execute(double[] xs, double[] ys, double distance, BatchExecutor<T> executor) {
+		int[] queries = new int[Math.min(xs.length, ys.length)];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = i;
+		}
+		return this.root.execute(xs, ys, queries, 0, queries.length, distance, executor);
+	}
+
 	public int size() {
 		return this.size;
 	}
@@ -123,66 +271,18 @@ public class QuadTree<T> {
 		return this.root.getBounds().maxY;
 	}
 
+	/**
+	 * The values in the tree, in the order of the leaves SW, NW, SE, NE
+	 * at every level. Iterators walk the tree once with a stack of the
+	 * nodes still to visit, so iterating costs O(n) and allocates
+	 * nothing per value.
+	 */
 	public AbstractCollection<T> values() {
 		if (this.values == null) {
 			this.values = new AbstractCollection<T>() {
 				@Override
 				public Iterator<T> iterator() {
-					Iterator<T> iterator = new Iterator<T>() {
-						private QuadLeaf<T> currentLeaf = firstLeaf();
-						private int nextIndex = 0;
-						private T next = first();
-
-						private T first() {
-							if (this.currentLeaf == null) {
-								return null;
-							}
-							this.nextIndex = 0;
-							loadNext();
-							return this.next;
-						}
-
-						@Override
-						public boolean hasNext() {
-							return this.next != null;
-						}
-
-						@Override
-						public T next() {
-							if (this.next == null) {
-								return null;
-							}
-							T current = this.next;
-							loadNext();
-							return current;
-						}
-
-						private void loadNext() {
-							boolean searching = true;
-							while (searching) {
-								if (this.nextIndex < this.currentLeaf.values.size()) {
-									this.nextIndex++;
-									this.next = this.currentLeaf.values.get(this.nextIndex - 1);
-									searching = false;
-								} else {
-									this.currentLeaf = nextLeaf(this.currentLeaf);
-									if (this.currentLeaf == null) {
-										this.next = null;
-										searching = false;
-									} else {
-										this.nextIndex = 0;
-									}
-								}
-							}
-						}
-
-						@Override
-						public void remove() {
-							throw new UnsupportedOperationException();
-						}
-
-					};
-					return iterator;
+					return new ValueIterator();
 				}
 
 				@Override
@@ -194,16 +294,72 @@ public class QuadTree<T> {
 		return this.values;
 	}
 
-	private QuadLeaf<T> firstLeaf() {
-		return this.root.firstLeaf();
+	/**
+	 * Executes executor on every object in the tree, in the order of
+	 * values(), and returns how many there were.
+	 */
+	public int forEach(Executor<T> executor) {
+		return this.root.forEach(executor);
 	}
 
-	private QuadLeaf<T> nextLeaf(QuadLeaf<T> currentLeaf) {
-		return this.root.nextLeaf(currentLeaf);
-	}
+	private final class ValueIterator implements Iterator<T> {
+		private final ArrayList<QuadNode<T>> stack = new ArrayList<QuadNode<T>>();
+		private QuadLeaf<T> leaf = null;
+		private int nextIndex = 0;
+
+		ValueIterator() {
+			this.stack.add(QuadTree.this.root);
+			advance();
+		}
+
+		/** moves on to the next leaf with values, if the current one is used up */
+		private void advance() {
+			while (this.leaf == null || this.nextIndex >= this.leaf.values.size()) {
+				if (this.stack.isEmpty()) {
+					this.leaf = null;
+					return;
+				}
+				QuadNode<T> node = this.stack.remove(this.stack.size() - 1);
+				if (node.hasChildren()) {
+					//pushed in reverse so that SW comes off first
+					this.stack.add(node.getNE());
+					this.stack.add(node.getSE());
+					this.stack.add(node.getNW());
+					this.stack.add(node.getSW());
+				} else {
+					this.leaf = node.getLeaf();
+					this.nextIndex = 0;
+				}
+			}
+		}
 
+		@Override
+		public boolean hasNext() {
+			return this.leaf != null;
+		}
+
+		@Override
+		public T next() {
+			if (this.leaf == null) {
+				return null;
+			}
+			T current = this.leaf.values.get(this.nextIndex++);
+			advance();
+			return current;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
 
-	interface Executor<T>{	
+	public interface Executor<T>{	
 		public void execute(double x, double y, T object); 
 	}
+
+	public interface BatchExecutor<T>{
+		/** called for each object found for the query at index query */
+		public void execute(int query, double x, double y, T object);
+	}
 }
\ No newline at end of file
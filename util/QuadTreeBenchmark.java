@@ -0,0 +1,88 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Compares the cost of building and querying QuadTree and FlatQuadTree
+ * on the same uniformly random points, the way a layout rebuilds its
+ * index once per iteration. Run with
+ * <pre>
+ * java utils.QuadTreeBenchmark [points] [rounds]
+ * </pre>
+ * Each round builds both trees from scratch, QuadTree by new and put(),
+ * FlatQuadTree by reset() and put(), then asks each for the point
+ * nearest to every point and for every point within RADIUS of it. The
+ * first half of the rounds warm up the JIT and are not timed; the time
+ * per round of the rest is printed.
+ */
+public class QuadTreeBenchmark {
+	private static final double SPACING = 50; // mean distance between points, as K in the layouts
+	private static final double RADIUS = 2 * SPACING;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		double side = Math.sqrt(n) * SPACING;
+		Random random = new Random(1);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		Integer[] ids = new Integer[n]; //boxed once, so put() is not timed boxing
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * side;
+			y[i] = random.nextDouble() * side;
+			ids[i] = i;
+		}
+
+		FlatQuadTree flat = new FlatQuadTree(0, 0, side, side, n);
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		TIntArrayList found = new TIntArrayList();
+		long treeBuild = 0, treeQuery = 0, flatBuild = 0, flatQuery = 0;
+		long check = 0; //so that no query can be optimised away
+
+		for (int r = 0; r < rounds; r++) {
+			long t0 = System.nanoTime();
+			QuadTree<Integer> tree = new QuadTree<Integer>(0, 0, side, side);
+			for (int i = 0; i < n; i++) tree.put(x[i], y[i], ids[i]);
+
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				check += tree.get(x[i], y[i]);
+				values.clear();
+				check += tree.get(x[i], y[i], RADIUS, values).size();
+			}
+
+			long t2 = System.nanoTime();
+			flat.reset(0, 0, side, side);
+			for (int i = 0; i < n; i++) flat.put(x[i], y[i], i);
+
+			long t3 = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				check += flat.get(x[i], y[i]);
+				found.resetQuick();
+				check += flat.get(x[i], y[i], RADIUS, found).size();
+			}
+			long t4 = System.nanoTime();
+
+			if (r >= rounds / 2) {
+				treeBuild += t1 - t0;
+				treeQuery += t2 - t1;
+				flatBuild += t3 - t2;
+				flatQuery += t4 - t3;
+			}
+		}
+
+		int timed = rounds - rounds / 2;
+		System.out.println(n + " points, " + timed + " timed rounds, ms per round (check " + check + ")");
+		System.out.println(String.format("%-14s %10s %10s", "", "build", "query"));
+		print("QuadTree", treeBuild, treeQuery, timed);
+		print("FlatQuadTree", flatBuild, flatQuery, timed);
+	}
+
+	private static void print(String name, long build, long query, int rounds) {
+		System.out.println(String.format("%-14s %10.2f %10.2f", name, build / 1e6 / rounds, query / 1e6 / rounds));
+	}
+}
@@ -0,0 +1,99 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares building a QuadTree by repeated put() with the bulk loading
+ * constructor, on clustered points such as a settled layout gives.
+ * Run with
+ * <pre>
+ * java utils.QuadTreeBulkLoadBenchmark [points] [clusters] [rounds]
+ * </pre>
+ * The points fall in tight Gaussian clusters around random centres,
+ * and every tenth point sits exactly on its cluster's centre, as
+ * vertices that were never moved apart do. Each round builds the tree
+ * both ways; the first half of the rounds warm up the JIT and are not
+ * timed. The build time per round is printed, with the number of nodes
+ * and the depth of each tree.
+ * <p>
+ * Both ways allocate the same nodes, so on a small heap the times are
+ * mostly garbage collection; give it a few GB, such as -Xmx2g, for
+ * numbers that compare the builds themselves.
+ */
+public class QuadTreeBulkLoadBenchmark {
+	private static final double SIDE = 10000;
+	private static final double SPREAD = 20; // standard deviation of a cluster
+	private static final int COINCIDENT = 10; // one point in this many sits on its centre
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int clusters = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+		Random random = new Random(1);
+		double[] cx = new double[clusters];
+		double[] cy = new double[clusters];
+		for (int c = 0; c < clusters; c++) {
+			cx[c] = SPREAD * 5 + random.nextDouble() * (SIDE - SPREAD * 10);
+			cy[c] = SPREAD * 5 + random.nextDouble() * (SIDE - SPREAD * 10);
+		}
+
+		double[] x = new double[n];
+		double[] y = new double[n];
+		List<Integer> values = new ArrayList<Integer>(n);
+		for (int i = 0; i < n; i++) {
+			int c = random.nextInt(clusters);
+			boolean centre = i % COINCIDENT == 0;
+			x[i] = centre ? cx[c] : cx[c] + random.nextGaussian() * SPREAD;
+			y[i] = centre ? cy[c] : cy[c] + random.nextGaussian() * SPREAD;
+			values.add(i);
+		}
+
+		long putTime = 0, bulkTime = 0;
+		QuadTree<Integer> put = null, bulk = null;
+		for (int r = 0; r < rounds; r++) {
+			long t0 = System.nanoTime();
+			put = new QuadTree<Integer>(0, 0, SIDE, SIDE);
+			for (int i = 0; i < n; i++) put.put(x[i], y[i], values.get(i));
+
+			long t1 = System.nanoTime();
+			bulk = new QuadTree<Integer>(0, 0, SIDE, SIDE, x, y, values);
+			long t2 = System.nanoTime();
+
+			if (r >= rounds / 2) {
+				putTime += t1 - t0;
+				bulkTime += t2 - t1;
+			}
+		}
+
+		int timed = rounds - rounds / 2;
+		System.out.println(n + " points in " + clusters + " clusters, " + timed + " timed rounds");
+		System.out.println(String.format("%-8s %10s %10s %6s", "", "ms/build", "nodes", "depth"));
+		print("put", putTime, timed, put);
+		print("bulk", bulkTime, timed, bulk);
+	}
+
+	private static void print(String name, long time, int rounds, QuadTree<Integer> tree) {
+		//walk the tree, counting nodes and the deepest level
+		int nodes = 0, depth = 0;
+		List<QuadNode<Integer>> level = new ArrayList<QuadNode<Integer>>();
+		level.add(tree.getRoot());
+		while (!level.isEmpty()) {
+			nodes += level.size();
+			List<QuadNode<Integer>> next = new ArrayList<QuadNode<Integer>>();
+			for (QuadNode<Integer> node : level) {
+				if (node.hasChildren()) {
+					next.add(node.getSW());
+					next.add(node.getNW());
+					next.add(node.getSE());
+					next.add(node.getNE());
+				}
+			}
+			if (!next.isEmpty()) depth++;
+			level = next;
+		}
+		System.out.println(String.format("%-8s %10.2f %10d %6d", name, time / 1e6 / rounds, nodes, depth));
+	}
+}
@@ -0,0 +1,71 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current generation of a QuadTree that is rebuilt while
+ * other threads query it, such as a spatial index over a layout that
+ * the UI hit-tests while layout threads move the vertices.
+ * <p>
+ * The writer builds each new generation in a tree of its own, which no
+ * reader can see, and publishes it; the tree is frozen and swapped in
+ * atomically with the next version number. Readers take a Snapshot and
+ * query its tree for as long as they like: it never changes under them,
+ * and a reader that needs several queries to agree keeps using the
+ * same snapshot instead of calling get() again.
+ * <p>
+ * Queries only read the tree; result buffers such as NearestNeighbours
+ * belong to the reader, one per thread.
+ */
+public class VersionedQuadTree<T> {
+
+	/** one published generation of the tree */
+	public static final class Snapshot<T> {
+		public final QuadTree<T> tree;
+		public final long version;
+
+		private Snapshot(QuadTree<T> tree, long version) {
+			this.tree = tree;
+			this.version = version;
+		}
+	}
+
+	private final AtomicReference<Snapshot<T>> current;
+
+	/**
+	 * Starts with initial as version 0, freezing it.
+	 */
+	public VersionedQuadTree(QuadTree<T> initial) {
+		initial.freeze();
+		this.current = new AtomicReference<Snapshot<T>>(new Snapshot<T>(initial, 0));
+	}
+
+	/**
+	 * The latest generation, consistent for as long as it is held.
+	 */
+	public Snapshot<T> get() {
+		return this.current.get();
+	}
+
+	public QuadTree<T> getTree() {
+		return this.current.get().tree;
+	}
+
+	public long getVersion() {
+		return this.current.get().version;
+	}
+
+	/**
+	 * Freezes next and makes it the current generation. The writer must
+	 * not change next afterwards; it builds the following generation in
+	 * a new tree. Returns the version given to next.
+	 */
+	public long publish(QuadTree<T> next) {
+		next.freeze();
+		while (true) {
+			Snapshot<T> previous = this.current.get();
+			Snapshot<T> snapshot = new Snapshot<T>(next, previous.version + 1);
+			if (this.current.compareAndSet(previous, snapshot)) return snapshot.version;
+		}
+	}
+}